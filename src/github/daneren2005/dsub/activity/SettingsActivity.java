@@ -67,10 +67,16 @@ public class SettingsActivity extends PreferenceActivity implements SharedPrefer
 	private ListPreference maxVideoBitrateWifi;
     private ListPreference maxVideoBitrateMobile;
 	private ListPreference networkTimeout;
+	private ListPreference downloadLimitScreenOn;
+	private ListPreference downloadLimitScreenOff;
+	private ListPreference downloadLimitWifi;
+	private ListPreference downloadLimitMetered;
     private EditTextPreference cacheSize;
     private EditTextPreference cacheLocation;
     private ListPreference preloadCountWifi;
 	private ListPreference preloadCountMobile;
+	private ListPreference downloadConcurrency;
+	private ListPreference prefetchDirectories;
 	private EditTextPreference randomSize;
 	private ListPreference tempLoss;
 	private ListPreference pauseDisconnect;
@@ -108,10 +114,16 @@ public class SettingsActivity extends PreferenceActivity implements SharedPrefer
 		maxVideoBitrateWifi = (ListPreference) findPreference(Constants.PREFERENCES_KEY_MAX_VIDEO_BITRATE_WIFI);
         maxVideoBitrateMobile = (ListPreference) findPreference(Constants.PREFERENCES_KEY_MAX_VIDEO_BITRATE_MOBILE);
 		networkTimeout = (ListPreference) findPreference(Constants.PREFERENCES_KEY_NETWORK_TIMEOUT);
+		downloadLimitScreenOn = (ListPreference) findPreference(Constants.PREFERENCES_KEY_DOWNLOAD_LIMIT_SCREEN_ON);
+		downloadLimitScreenOff = (ListPreference) findPreference(Constants.PREFERENCES_KEY_DOWNLOAD_LIMIT_SCREEN_OFF);
+		downloadLimitWifi = (ListPreference) findPreference(Constants.PREFERENCES_KEY_DOWNLOAD_LIMIT_WIFI);
+		downloadLimitMetered = (ListPreference) findPreference(Constants.PREFERENCES_KEY_DOWNLOAD_LIMIT_METERED);
         cacheSize = (EditTextPreference) findPreference(Constants.PREFERENCES_KEY_CACHE_SIZE);
         cacheLocation = (EditTextPreference) findPreference(Constants.PREFERENCES_KEY_CACHE_LOCATION);
         preloadCountWifi = (ListPreference) findPreference(Constants.PREFERENCES_KEY_PRELOAD_COUNT_WIFI);
 		preloadCountMobile = (ListPreference) findPreference(Constants.PREFERENCES_KEY_PRELOAD_COUNT_MOBILE);
+		downloadConcurrency = (ListPreference) findPreference(Constants.PREFERENCES_KEY_DOWNLOAD_CONCURRENCY);
+		prefetchDirectories = (ListPreference) findPreference(Constants.PREFERENCES_KEY_PREFETCH_DIRECTORIES);
 		randomSize = (EditTextPreference) findPreference(Constants.PREFERENCES_KEY_RANDOM_SIZE);
 		tempLoss = (ListPreference) findPreference(Constants.PREFERENCES_KEY_TEMP_LOSS);
 		pauseDisconnect = (ListPreference) findPreference(Constants.PREFERENCES_KEY_PAUSE_DISCONNECT);
@@ -293,10 +305,16 @@ public class SettingsActivity extends PreferenceActivity implements SharedPrefer
 		maxVideoBitrateWifi.setSummary(maxVideoBitrateWifi.getEntry());
         maxVideoBitrateMobile.setSummary(maxVideoBitrateMobile.getEntry());
 		networkTimeout.setSummary(networkTimeout.getEntry());
+		downloadLimitScreenOn.setSummary(downloadLimitScreenOn.getEntry());
+		downloadLimitScreenOff.setSummary(downloadLimitScreenOff.getEntry());
+		downloadLimitWifi.setSummary(downloadLimitWifi.getEntry());
+		downloadLimitMetered.setSummary(downloadLimitMetered.getEntry());
         cacheSize.setSummary(cacheSize.getText());
         cacheLocation.setSummary(cacheLocation.getText());
         preloadCountWifi.setSummary(preloadCountWifi.getEntry());
 		preloadCountMobile.setSummary(preloadCountMobile.getEntry());
+		downloadConcurrency.setSummary(downloadConcurrency.getEntry());
+		prefetchDirectories.setSummary(prefetchDirectories.getEntry());
 		randomSize.setSummary(randomSize.getText());
 		tempLoss.setSummary(tempLoss.getEntry());
 		pauseDisconnect.setSummary(pauseDisconnect.getEntry());
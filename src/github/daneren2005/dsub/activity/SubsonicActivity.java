@@ -61,6 +61,7 @@ import java.util.Locale;
 import github.daneren2005.dsub.R;
 import github.daneren2005.dsub.fragments.SubsonicFragment;
 import github.daneren2005.dsub.service.DownloadService;
+import github.daneren2005.dsub.service.MusicServiceFactory;
 import github.daneren2005.dsub.util.Constants;
 import github.daneren2005.dsub.util.ImageLoader;
 import github.daneren2005.dsub.util.Util;
@@ -133,6 +134,7 @@ public class SubsonicActivity extends ActionBarActivity implements OnItemSelecte
 		
 		populateDrawer();
 		UpdateView.addActiveActivity();
+		MusicServiceFactory.prewarm(this);
 	}
 
 	@Override
@@ -140,6 +142,7 @@ public class SubsonicActivity extends ActionBarActivity implements OnItemSelecte
 		super.onPause();
 
 		UpdateView.removeActiveActivity();
+		MusicServiceFactory.stopPrewarm(this);
 	}
 
 	@Override
@@ -148,6 +151,14 @@ public class SubsonicActivity extends ActionBarActivity implements OnItemSelecte
 		destroyed = true;
 	}
 
+	@Override
+	public void onLowMemory() {
+		super.onLowMemory();
+		if(IMAGE_LOADER != null) {
+			IMAGE_LOADER.onLowMemory();
+		}
+	}
+
 	@Override
 	public void finish() {
 		super.finish();
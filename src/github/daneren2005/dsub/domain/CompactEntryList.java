@@ -0,0 +1,427 @@
+/*
+	This file is part of Subsonic.
+
+	Subsonic is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	Subsonic is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with Subsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+	Copyright 2014 (C) Scott Jackson
+*/
+package github.daneren2005.dsub.domain;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoSerializable;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * List of entries stored as columns with a shared string table instead of one object per entry.
+ * Entries are only created when they are asked for.  Only the last few asked for are held on to, changes made to them are folded
+ * back into the columns once they drop out, but changes made to an entry after that are lost.  Access is synchronized since the list can be written out on another thread while it is still being used.
+ */
+public class CompactEntryList extends AbstractList<MusicDirectory.Entry> implements RandomAccess, Serializable, KryoSerializable {
+	public static final int MIN_SIZE = 500;
+
+	private static final int TEXT_COLUMNS = 15;
+	private static final int NUMBER_COLUMNS = 6;
+	private static final int NULL_NUMBER = Integer.MIN_VALUE;
+	private static final long NULL_SIZE = Long.MIN_VALUE;
+	private static final byte DIRECTORY = 1;
+	private static final byte VIDEO = 2;
+	private static final byte STARRED = 4;
+	private static final int WINDOW_SIZE = 64;
+
+	private int size;
+	private String[] strings;
+	private int stringCount;
+	private int[] text;
+	private int[] numbers;
+	private long[] sizes;
+	private byte[] flags;
+
+	// Recently handed out entries, slotted by row
+	private transient MusicDirectory.Entry[] window;
+	private transient int[] windowRows;
+	private transient Map<String, Integer> stringIndexes;
+
+	public CompactEntryList() {
+		this(0);
+	}
+	private CompactEntryList(int capacity) {
+		strings = new String[Math.max(16, capacity)];
+		text = new int[capacity * TEXT_COLUMNS];
+		numbers = new int[capacity * NUMBER_COLUMNS];
+		sizes = new long[capacity];
+		flags = new byte[capacity];
+	}
+
+	/**
+	 * Returns null if the list holds anything other than plain entries, since their extra fields would be lost.
+	 */
+	public static CompactEntryList create(List<MusicDirectory.Entry> list) {
+		for(MusicDirectory.Entry entry: list) {
+			if(entry == null || entry.getClass() != MusicDirectory.Entry.class) {
+				return null;
+			}
+		}
+
+		CompactEntryList compact = new CompactEntryList(list.size());
+		for(MusicDirectory.Entry entry: list) {
+			compact.store(compact.size++, entry);
+		}
+		return compact;
+	}
+
+	@Override
+	public synchronized int size() {
+		return size;
+	}
+
+	@Override
+	public synchronized MusicDirectory.Entry get(int index) {
+		checkIndex(index, size);
+		if(window == null) {
+			window = new MusicDirectory.Entry[WINDOW_SIZE];
+			windowRows = new int[WINDOW_SIZE];
+		}
+
+		int slot = index % WINDOW_SIZE;
+		MusicDirectory.Entry entry = window[slot];
+		if(entry == null || windowRows[slot] != index) {
+			release(slot);
+			entry = load(index);
+			window[slot] = entry;
+			windowRows[slot] = index;
+		}
+		return entry;
+	}
+
+	/**
+	 * Whether the entry is a directory, without creating it
+	 */
+	public synchronized boolean isDirectory(int index) {
+		checkIndex(index, size);
+		return (flags[index] & DIRECTORY) != 0;
+	}
+
+	/**
+	 * Whether the entry is a video, without creating it
+	 */
+	public synchronized boolean isVideo(int index) {
+		checkIndex(index, size);
+		return (flags[index] & VIDEO) != 0;
+	}
+
+	@Override
+	public synchronized MusicDirectory.Entry set(int index, MusicDirectory.Entry entry) {
+		MusicDirectory.Entry old = get(index);
+		// Replaced outright, so whatever was done to the old one doesn't need to be kept
+		window[index % WINDOW_SIZE] = null;
+		store(index, entry);
+		return old;
+	}
+
+	@Override
+	public synchronized void add(int index, MusicDirectory.Entry entry) {
+		checkIndex(index, size + 1);
+		ensureCapacity(size + 1);
+		flushWindow();
+		moveRows(index, index + 1, size - index);
+		size++;
+		store(index, entry);
+		modCount++;
+	}
+
+	@Override
+	public synchronized MusicDirectory.Entry remove(int index) {
+		MusicDirectory.Entry old = get(index);
+		flushWindow();
+		moveRows(index + 1, index, size - index - 1);
+		size--;
+		modCount++;
+		return old;
+	}
+
+	@Override
+	public synchronized void clear() {
+		size = 0;
+		window = null;
+		windowRows = null;
+		modCount++;
+	}
+
+	private void checkIndex(int index, int limit) {
+		if(index < 0 || index >= limit) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+	}
+
+	private void ensureCapacity(int capacity) {
+		if(capacity <= sizes.length) {
+			return;
+		}
+
+		int newCapacity = Math.max(capacity, sizes.length * 3 / 2 + 1);
+		text = copyOf(text, newCapacity * TEXT_COLUMNS);
+		numbers = copyOf(numbers, newCapacity * NUMBER_COLUMNS);
+
+		long[] newSizes = new long[newCapacity];
+		System.arraycopy(sizes, 0, newSizes, 0, size);
+		sizes = newSizes;
+
+		byte[] newFlags = new byte[newCapacity];
+		System.arraycopy(flags, 0, newFlags, 0, size);
+		flags = newFlags;
+	}
+
+	private int[] copyOf(int[] array, int length) {
+		int[] copy = new int[length];
+		System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+		return copy;
+	}
+
+	private void moveRows(int from, int to, int count) {
+		if(count <= 0) {
+			return;
+		}
+
+		System.arraycopy(text, from * TEXT_COLUMNS, text, to * TEXT_COLUMNS, count * TEXT_COLUMNS);
+		System.arraycopy(numbers, from * NUMBER_COLUMNS, numbers, to * NUMBER_COLUMNS, count * NUMBER_COLUMNS);
+		System.arraycopy(sizes, from, sizes, to, count);
+		System.arraycopy(flags, from, flags, to, count);
+	}
+
+	private void store(int row, MusicDirectory.Entry entry) {
+		int t = row * TEXT_COLUMNS;
+		text[t] = getStringIndex(entry.getId());
+		text[t + 1] = getStringIndex(entry.getParent());
+		text[t + 2] = getStringIndex(entry.getGrandParent());
+		text[t + 3] = getStringIndex(entry.getAlbumId());
+		text[t + 4] = getStringIndex(entry.getArtistId());
+		text[t + 5] = getStringIndex(entry.getTitle());
+		text[t + 6] = getStringIndex(entry.getAlbum());
+		text[t + 7] = getStringIndex(entry.getArtist());
+		text[t + 8] = getStringIndex(entry.getGenre());
+		text[t + 9] = getStringIndex(entry.getContentType());
+		text[t + 10] = getStringIndex(entry.getSuffix());
+		text[t + 11] = getStringIndex(entry.getTranscodedContentType());
+		text[t + 12] = getStringIndex(entry.getTranscodedSuffix());
+		text[t + 13] = getStringIndex(entry.getCoverArt());
+		text[t + 14] = getStringIndex(entry.getPath());
+
+		int n = row * NUMBER_COLUMNS;
+		numbers[n] = toNumber(entry.getTrack());
+		numbers[n + 1] = toNumber(entry.getYear());
+		numbers[n + 2] = toNumber(entry.getDuration());
+		numbers[n + 3] = toNumber(entry.getBitRate());
+		numbers[n + 4] = toNumber(entry.getDiscNumber());
+		numbers[n + 5] = entry.getCloseness();
+
+		sizes[row] = entry.getSize() == null ? NULL_SIZE : entry.getSize();
+		flags[row] = (byte) ((entry.isDirectory() ? DIRECTORY : 0) | (entry.isVideo() ? VIDEO : 0) | (entry.isStarred() ? STARRED : 0));
+	}
+
+	/**
+	 * Whether the row already holds everything in the entry, so it only needs to be stored again if it was changed
+	 */
+	private boolean matches(int row, MusicDirectory.Entry entry) {
+		int t = row * TEXT_COLUMNS;
+		int n = row * NUMBER_COLUMNS;
+		byte entryFlags = (byte) ((entry.isDirectory() ? DIRECTORY : 0) | (entry.isVideo() ? VIDEO : 0) | (entry.isStarred() ? STARRED : 0));
+		return equals(text[t], entry.getId()) && equals(text[t + 1], entry.getParent()) && equals(text[t + 2], entry.getGrandParent())
+				&& equals(text[t + 3], entry.getAlbumId()) && equals(text[t + 4], entry.getArtistId()) && equals(text[t + 5], entry.getTitle())
+				&& equals(text[t + 6], entry.getAlbum()) && equals(text[t + 7], entry.getArtist()) && equals(text[t + 8], entry.getGenre())
+				&& equals(text[t + 9], entry.getContentType()) && equals(text[t + 10], entry.getSuffix()) && equals(text[t + 11], entry.getTranscodedContentType())
+				&& equals(text[t + 12], entry.getTranscodedSuffix()) && equals(text[t + 13], entry.getCoverArt()) && equals(text[t + 14], entry.getPath())
+				&& numbers[n] == toNumber(entry.getTrack()) && numbers[n + 1] == toNumber(entry.getYear()) && numbers[n + 2] == toNumber(entry.getDuration())
+				&& numbers[n + 3] == toNumber(entry.getBitRate()) && numbers[n + 4] == toNumber(entry.getDiscNumber()) && numbers[n + 5] == entry.getCloseness()
+				&& sizes[row] == (entry.getSize() == null ? NULL_SIZE : entry.getSize()) && flags[row] == entryFlags;
+	}
+	private boolean equals(int index, String value) {
+		String string = getString(index);
+		return string == null ? value == null : string.equals(value);
+	}
+
+	private MusicDirectory.Entry load(int row) {
+		MusicDirectory.Entry entry = new MusicDirectory.Entry();
+
+		int t = row * TEXT_COLUMNS;
+		entry.setId(getString(text[t]));
+		entry.setParent(getString(text[t + 1]));
+		entry.setGrandParent(getString(text[t + 2]));
+		entry.setAlbumId(getString(text[t + 3]));
+		entry.setArtistId(getString(text[t + 4]));
+		entry.setTitle(getString(text[t + 5]));
+		entry.setAlbum(getString(text[t + 6]));
+		entry.setArtist(getString(text[t + 7]));
+		entry.setGenre(getString(text[t + 8]));
+		entry.setContentType(getString(text[t + 9]));
+		entry.setSuffix(getString(text[t + 10]));
+		entry.setTranscodedContentType(getString(text[t + 11]));
+		entry.setTranscodedSuffix(getString(text[t + 12]));
+		entry.setCoverArt(getString(text[t + 13]));
+		entry.setPath(getString(text[t + 14]));
+
+		int n = row * NUMBER_COLUMNS;
+		entry.setTrack(fromNumber(numbers[n]));
+		entry.setYear(fromNumber(numbers[n + 1]));
+		entry.setDuration(fromNumber(numbers[n + 2]));
+		entry.setBitRate(fromNumber(numbers[n + 3]));
+		entry.setDiscNumber(fromNumber(numbers[n + 4]));
+		entry.setCloseness(numbers[n + 5]);
+
+		entry.setSize(sizes[row] == NULL_SIZE ? null : sizes[row]);
+		entry.setDirectory((flags[row] & DIRECTORY) != 0);
+		entry.setVideo((flags[row] & VIDEO) != 0);
+		entry.setStarred((flags[row] & STARRED) != 0);
+		return entry;
+	}
+
+	private int toNumber(Integer value) {
+		return value == null ? NULL_NUMBER : value;
+	}
+	private Integer fromNumber(int value) {
+		return value == NULL_NUMBER ? null : value;
+	}
+
+	private int getStringIndex(String value) {
+		if(value == null) {
+			return -1;
+		}
+
+		if(stringIndexes == null) {
+			stringIndexes = new HashMap<String, Integer>(stringCount * 2);
+			for(int i = 0; i < stringCount; i++) {
+				stringIndexes.put(strings[i], i);
+			}
+		}
+
+		Integer index = stringIndexes.get(value);
+		if(index == null) {
+			if(stringCount == strings.length) {
+				String[] newStrings = new String[strings.length * 2];
+				System.arraycopy(strings, 0, newStrings, 0, stringCount);
+				strings = newStrings;
+			}
+
+			index = stringCount++;
+			strings[index] = value;
+			stringIndexes.put(value, index);
+		}
+		return index;
+	}
+	private String getString(int index) {
+		return index == -1 ? null : strings[index];
+	}
+
+	/**
+	 * Folds any changes made to an entry that is dropping out of the window back into its row
+	 */
+	private void release(int slot) {
+		MusicDirectory.Entry entry = window[slot];
+		if(entry != null) {
+			window[slot] = null;
+			int row = windowRows[slot];
+			if(row < size && !matches(row, entry)) {
+				store(row, entry);
+			}
+		}
+	}
+	private void flushWindow() {
+		if(window != null) {
+			for(int i = 0; i < WINDOW_SIZE; i++) {
+				release(i);
+			}
+		}
+	}
+
+	/**
+	 * Folds any changes made to handed out entries back into the columns before they are written out
+	 */
+	private void flush() {
+		if(window != null) {
+			for(int i = 0; i < WINDOW_SIZE; i++) {
+				if(window[i] != null && windowRows[i] < size && !matches(windowRows[i], window[i])) {
+					store(windowRows[i], window[i]);
+				}
+			}
+		}
+		// Only needed while building, the table can be rebuilt on the next change
+		stringIndexes = null;
+	}
+
+	@Override
+	public synchronized void write(Kryo kryo, Output output) {
+		flush();
+
+		output.writeInt(size, true);
+		output.writeInt(stringCount, true);
+		for(int i = 0; i < stringCount; i++) {
+			output.writeString(strings[i]);
+		}
+		for(int i = 0; i < size * TEXT_COLUMNS; i++) {
+			output.writeInt(text[i] + 1, true);
+		}
+		for(int i = 0; i < size * NUMBER_COLUMNS; i++) {
+			output.writeInt(numbers[i], false);
+		}
+		for(int i = 0; i < size; i++) {
+			output.writeLong(sizes[i], false);
+		}
+		output.writeBytes(flags, 0, size);
+	}
+
+	@Override
+	public synchronized void read(Kryo kryo, Input input) {
+		size = input.readInt(true);
+		stringCount = input.readInt(true);
+		strings = new String[Math.max(16, stringCount)];
+		for(int i = 0; i < stringCount; i++) {
+			strings[i] = input.readString();
+		}
+		text = new int[size * TEXT_COLUMNS];
+		for(int i = 0; i < text.length; i++) {
+			text[i] = input.readInt(true) - 1;
+		}
+		numbers = new int[size * NUMBER_COLUMNS];
+		for(int i = 0; i < numbers.length; i++) {
+			numbers[i] = input.readInt(false);
+		}
+		sizes = new long[size];
+		for(int i = 0; i < size; i++) {
+			sizes[i] = input.readLong(false);
+		}
+		flags = input.readBytes(size);
+		window = null;
+		windowRows = null;
+		stringIndexes = null;
+	}
+
+	private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+		flush();
+		out.defaultWriteObject();
+	}
+
+	private synchronized void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+	}
+}
@@ -20,6 +20,7 @@ package github.daneren2005.dsub.domain;
 
 import android.media.MediaMetadataRetriever;
 import android.util.Log;
+import github.daneren2005.dsub.util.Util;
 import java.util.ArrayList;
 import java.util.List;
 import java.io.File;
@@ -90,6 +91,17 @@ public class MusicDirectory implements Serializable {
         }
 
         List<Entry> result = new ArrayList<Entry>(children.size());
+		if(children instanceof CompactEntryList) {
+			// Check the flag column so the entries being left out are never created
+			CompactEntryList compact = (CompactEntryList) children;
+			for(int i = 0; i < compact.size(); i++) {
+				boolean directory = compact.isDirectory(i);
+				if(directory && includeDirs || !directory && includeFiles) {
+					result.add(compact.get(i));
+				}
+			}
+			return result;
+		}
         for (Entry child : children) {
             if (child.isDirectory() && includeDirs || !child.isDirectory() && includeFiles) {
                 result.add(child);
@@ -102,10 +114,38 @@ public class MusicDirectory implements Serializable {
 		return children.size();
 	}
 	
+	/**
+	 * Swap large lists of children over to a CompactEntryList so they take up a fraction of the memory
+	 */
+	public void compact() {
+		if(children.size() >= CompactEntryList.MIN_SIZE && !(children instanceof CompactEntryList)) {
+			CompactEntryList compact = CompactEntryList.create(children);
+			if(compact != null) {
+				children = compact;
+			}
+		}
+	}
+	
 	public void sortChildren() {
 		EntryComparator.sort(children);
 	}
 
+	/**
+	 * Whether showing the other directory instead of this one would change anything on screen
+	 */
+	public boolean isSameAs(MusicDirectory other) {
+		if(!Util.equals(name, other.name) || children.size() != other.children.size()) {
+			return false;
+		}
+
+		for(int i = 0; i < children.size(); i++) {
+			if(!children.get(i).isSameAs(other.children.get(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
     public static class Entry implements Serializable {
         private String id;
         private String parent;
@@ -368,6 +408,13 @@ public class MusicDirectory implements Serializable {
 			this.closeness = closeness;
 		}
 
+		public boolean isSameAs(Entry other) {
+			return id.equals(other.id) && directory == other.directory && starred == other.starred && Util.equals(title, other.title)
+					&& Util.equals(artist, other.artist) && Util.equals(album, other.album) && Util.equals(track, other.track)
+					&& Util.equals(discNumber, other.discNumber) && Util.equals(year, other.year) && Util.equals(duration, other.duration)
+					&& Util.equals(coverArt, other.coverArt) && Util.equals(path, other.path);
+		}
+
         @Override
         public boolean equals(Object o) {
             if (this == o) {
@@ -3,7 +3,6 @@ package github.daneren2005.dsub.fragments;
 import android.app.AlertDialog;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
@@ -24,6 +23,7 @@ import github.daneren2005.dsub.service.DownloadService;
 import github.daneren2005.dsub.util.Constants;
 import github.daneren2005.dsub.util.FileUtil;
 import github.daneren2005.dsub.util.LoadingTask;
+import github.daneren2005.dsub.util.OfflineJournal;
 import github.daneren2005.dsub.view.MergeAdapter;
 import github.daneren2005.dsub.util.Util;
 import github.daneren2005.dsub.service.MusicService;
@@ -313,9 +313,17 @@ public class MainFragment extends SubsonicFragment {
 		}.execute();
 	}
 	private void deleteOffline() {
-		SharedPreferences.Editor offline = Util.getOfflineSync(context).edit();
-		offline.putInt(Constants.OFFLINE_SCROBBLE_COUNT, 0);
-		offline.commit();
+		new SilentBackgroundTask<Void>(context) {
+			@Override
+			protected Void doInBackground() throws Throwable {
+				OfflineJournal.getInstance(context).clearScrobbles();
+				return null;
+			}
+
+			@Override
+			protected void done(Void result) {
+			}
+		}.execute();
 	}
 
 	private void showAboutDialog() {
@@ -23,7 +23,7 @@ import github.daneren2005.dsub.domain.MusicDirectory;
 import github.daneren2005.dsub.domain.MusicFolder;
 import github.daneren2005.dsub.service.MusicService;
 import github.daneren2005.dsub.service.MusicServiceFactory;
-import github.daneren2005.dsub.util.BackgroundTask;
+import github.daneren2005.dsub.util.ChunkListener;
 import github.daneren2005.dsub.util.Constants;
 import github.daneren2005.dsub.util.ProgressListener;
 import github.daneren2005.dsub.util.TabBackgroundTask;
@@ -157,7 +157,11 @@ public class SelectArtistFragment extends SelectListFragment<Artist> {
 	protected void refresh(final boolean refresh) {
 		listView.setVisibility(View.INVISIBLE);
 
-		BackgroundTask<Indexes> task = new TabBackgroundTask<Indexes>(this) {
+		class IndexesTask extends TabBackgroundTask<Indexes> implements ChunkListener<Artist> {
+			public IndexesTask() {
+				super(SelectArtistFragment.this);
+			}
+
 			@Override
 			protected Indexes doInBackground() throws Throwable {
 				MusicService musicService = MusicServiceFactory.getMusicService(context);
@@ -182,8 +186,32 @@ public class SelectArtistFragment extends SelectListFragment<Artist> {
 				listView.setVisibility(View.VISIBLE);
 				refreshLayout.setRefreshing(false);
 			}
-		};
-		task.execute();
+
+			@Override
+			public void onChunk(final List<Artist> chunk) {
+				// Show artists as they are parsed, done replaces all of this with the full list
+				getHandler().post(new Runnable() {
+					@Override
+					public void run() {
+						if(isCancelled()) {
+							return;
+						}
+
+						if(listView.getVisibility() != View.VISIBLE) {
+							objects = new ArrayList<Artist>(chunk);
+							// Sections are only known once everything is parsed
+							listView.setFastScrollEnabled(false);
+							listView.setAdapter(adapter = getAdapter(objects));
+							listView.setVisibility(View.VISIBLE);
+						} else {
+							objects.addAll(chunk);
+							adapter.notifyDataSetChanged();
+						}
+					}
+				});
+			}
+		}
+		new IndexesTask().execute();
 	}
 
 	@Override
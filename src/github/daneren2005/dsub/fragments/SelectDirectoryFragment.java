@@ -39,9 +39,13 @@ import github.daneren2005.dsub.service.MusicServiceFactory;
 import github.daneren2005.dsub.service.OfflineException;
 import github.daneren2005.dsub.service.ServerTooOldException;
 import github.daneren2005.dsub.util.Constants;
+import github.daneren2005.dsub.util.DirectoryExpander;
+import github.daneren2005.dsub.util.DirectoryPrefetcher;
 import github.daneren2005.dsub.util.LoadingTask;
 import github.daneren2005.dsub.util.Pair;
+import github.daneren2005.dsub.util.ProgressListener;
 import github.daneren2005.dsub.util.TabBackgroundTask;
+import github.daneren2005.dsub.util.UpdateListener;
 import github.daneren2005.dsub.util.Util;
 import github.daneren2005.dsub.view.AlbumListAdapter;
 import java.util.ArrayList;
@@ -59,6 +63,7 @@ public class SelectDirectoryFragment extends SubsonicFragment implements Adapter
 	private Boolean licenseValid;
 	private boolean showHeader = true;
 	private EntryAdapter entryAdapter;
+	private DirectoryPrefetcher prefetcher;
 	private List<MusicDirectory.Entry> albums;
 	private List<MusicDirectory.Entry> entries;
 	private boolean albumContext = false;
@@ -101,6 +106,22 @@ public class SelectDirectoryFragment extends SubsonicFragment implements Adapter
 		outState.putSerializable(Constants.FRAGMENT_LIST2, (Serializable) albums);
 	}
 
+	@Override
+	public void onDestroy() {
+		super.onDestroy();
+		if(prefetcher != null) {
+			prefetcher.cancel();
+		}
+	}
+
+	@Override
+	public void setPrimaryFragment(boolean primary) {
+		super.setPrimaryFragment(primary);
+		if(!primary && prefetcher != null) {
+			prefetcher.cancel();
+		}
+	}
+
 	@Override
 	public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle bundle) {
 		Bundle args = getArguments();
@@ -468,7 +489,7 @@ public class SelectDirectoryFragment extends SubsonicFragment implements Adapter
 	private void getMusicDirectory(final String id, final String name, final boolean refresh) {
 		setTitle(name);
 
-		new LoadTask() {
+		new UpdatingLoadTask() {
 			@Override
 			protected MusicDirectory load(MusicService service) throws Exception {
 				MusicDirectory dir = getMusicDirectory(id, name, refresh, service, this);
@@ -500,27 +521,29 @@ public class SelectDirectoryFragment extends SubsonicFragment implements Adapter
 				} else {
 					root = share.getMusicDirectory();
 				}
-				List<MusicDirectory.Entry> songs = new ArrayList<MusicDirectory.Entry>();
-				getSongsRecursively(root, songs);
+				final List<MusicDirectory.Entry> songs = new ArrayList<MusicDirectory.Entry>();
+				final ProgressListener listener = this;
+				DirectoryExpander.expand(root, new DirectoryExpander.Loader() {
+					@Override
+					public MusicDirectory load(MusicDirectory.Entry dir) throws Exception {
+						MusicService musicService = MusicServiceFactory.getMusicService(context);
+						if(Util.isTagBrowsing(context) && !Util.isOffline(context)) {
+							return musicService.getAlbum(dir.getId(), dir.getTitle(), false, context, listener);
+						} else {
+							return musicService.getMusicDirectory(dir.getId(), dir.getTitle(), false, context, listener);
+						}
+					}
+				}, new DirectoryExpander.Visitor() {
+					@Override
+					public boolean visit(MusicDirectory dir) throws Exception {
+						songs.addAll(dir.getChildren(false, true));
+						return true;
+					}
+				});
 				root.replaceChildren(songs);
 				return root;
 			}
 			
-			private void getSongsRecursively(MusicDirectory parent, List<MusicDirectory.Entry> songs) throws Exception {
-				songs.addAll(parent.getChildren(false, true));
-				for (MusicDirectory.Entry dir : parent.getChildren(true, false)) {
-					MusicService musicService = MusicServiceFactory.getMusicService(context);
-
-					MusicDirectory musicDirectory;
-					if(Util.isTagBrowsing(context) && !Util.isOffline(context)) {
-						musicDirectory = musicService.getAlbum(dir.getId(), dir.getTitle(), false, context, this);
-					} else {
-						musicDirectory = musicService.getMusicDirectory(dir.getId(), dir.getTitle(), false, context, this);
-					}
-					getSongsRecursively(musicDirectory, songs);
-				}
-			}
-			
 			@Override
 			protected void done(Pair<MusicDirectory, Boolean> result) {
 				super.done(result);
@@ -621,25 +644,77 @@ public class SelectDirectoryFragment extends SubsonicFragment implements Adapter
 
 		@Override
 		protected void done(Pair<MusicDirectory, Boolean> result) {
-			if(largeAlbums) {
-				albums = result.getFirst().getChildren(true, false);
-				entries = result.getFirst().getChildren(false, true);
-			} else {
-				albums = new ArrayList<MusicDirectory.Entry>();
-				entries = result.getFirst().getChildren();
-			}
+			setEntries(result.getFirst());
             licenseValid = result.getSecond();
             finishLoading();
 		}
 	}
 
+	/**
+	 * Shows whatever is cached right away, then swaps in the server's copy if it turns out to be different
+	 */
+	private abstract class UpdatingLoadTask extends LoadTask implements UpdateListener<MusicDirectory> {
+		private String directoryId;
+
+		@Override
+		protected void done(Pair<MusicDirectory, Boolean> result) {
+			directoryId = result.getFirst().getId();
+			super.done(result);
+
+			if(!Util.isOffline(context)) {
+				if(prefetcher == null) {
+					prefetcher = new DirectoryPrefetcher(context, getImageLoader());
+				}
+				prefetcher.prefetch(result.getFirst().getChildren(true, false));
+			}
+		}
+
+		@Override
+		public void onUpdate(final MusicDirectory updated) {
+			getHandler().post(new Runnable() {
+				@Override
+				public void run() {
+					// Parent lookups revalidate the child directory as well, only care about the one being shown
+					if(isCancelled() || directoryId == null || !directoryId.equals(updated.getId())) {
+						return;
+					}
+
+					// Only the contents change, the header was already added and autoplay and prefetching already started
+					int position = entryList.getFirstVisiblePosition();
+					setEntries(updated);
+					if(showHeader && getSongCount() > 0 && entryList.findViewById(R.id.select_album_header) != null) {
+						createHeader(entries);
+					}
+					emptyView.setVisibility((entries.isEmpty() && albums.isEmpty()) ? View.VISIBLE : View.GONE);
+					setAdapters();
+					entryList.setSelection(position);
+				}
+			});
+		}
+	}
+
+	private void setEntries(MusicDirectory dir) {
+		if(largeAlbums) {
+			albums = dir.getChildren(true, false);
+			entries = dir.getChildren(false, true);
+		} else {
+			albums = new ArrayList<MusicDirectory.Entry>();
+			entries = dir.getChildren();
+		}
+	}
+
+	private int getSongCount() {
+		int songCount = 0;
+		for (MusicDirectory.Entry entry : entries) {
+			if (!entry.isDirectory()) {
+				songCount++;
+			}
+		}
+		return songCount;
+	}
+
     private void finishLoading() {
-        int songCount = 0;
-        for (MusicDirectory.Entry entry : entries) {
-            if (!entry.isDirectory()) {
-                songCount++;
-            }
-        }
+        int songCount = getSongCount();
 
         if (songCount > 0 && !"root".equals(id)) {
             if(showHeader) {
@@ -662,6 +737,18 @@ public class SelectDirectoryFragment extends SubsonicFragment implements Adapter
 		}
 
 		emptyView.setVisibility((entries.isEmpty() && albums.isEmpty()) ? View.VISIBLE : View.GONE);
+		setAdapters();
+        entryList.setVisibility(View.VISIBLE);
+        context.supportInvalidateOptionsMenu();
+
+        Bundle args = getArguments();
+        boolean playAll = args.getBoolean(Constants.INTENT_EXTRA_NAME_AUTOPLAY, false);
+        if (playAll && !restoredInstance) {
+            playAll(args.getBoolean(Constants.INTENT_EXTRA_NAME_SHUFFLE, false), false);
+        }
+    }
+
+	private void setAdapters() {
 		// Always going to have entries in entryAdapter
 		entryAdapter = new EntryAdapter(context, getImageLoader(), entries, (podcastId == null));
 		ListAdapter listAdapter = entryAdapter;
@@ -686,15 +773,7 @@ public class SelectDirectoryFragment extends SubsonicFragment implements Adapter
 			}
 		}
 		entryList.setAdapter(listAdapter);
-        entryList.setVisibility(View.VISIBLE);
-        context.supportInvalidateOptionsMenu();
-
-        Bundle args = getArguments();
-        boolean playAll = args.getBoolean(Constants.INTENT_EXTRA_NAME_AUTOPLAY, false);
-        if (playAll && !restoredInstance) {
-            playAll(args.getBoolean(Constants.INTENT_EXTRA_NAME_SHUFFLE, false), false);
-        }
-    }
+	}
 
 	private void playNow(final boolean shuffle, final boolean append) {
 		playNow(shuffle, append, false);
@@ -53,6 +53,7 @@ import github.daneren2005.dsub.domain.MusicDirectory;
 import github.daneren2005.dsub.domain.Playlist;
 import github.daneren2005.dsub.domain.PodcastEpisode;
 import github.daneren2005.dsub.domain.Share;
+import github.daneren2005.dsub.service.CachedMusicService;
 import github.daneren2005.dsub.service.DownloadFile;
 import github.daneren2005.dsub.service.DownloadService;
 import github.daneren2005.dsub.service.MusicService;
@@ -60,6 +61,7 @@ import github.daneren2005.dsub.service.MusicServiceFactory;
 import github.daneren2005.dsub.service.OfflineException;
 import github.daneren2005.dsub.service.ServerTooOldException;
 import github.daneren2005.dsub.util.Constants;
+import github.daneren2005.dsub.util.DirectoryExpander;
 import github.daneren2005.dsub.util.FileUtil;
 import github.daneren2005.dsub.util.ImageLoader;
 import github.daneren2005.dsub.util.ProgressListener;
@@ -615,8 +617,7 @@ public class SubsonicFragment extends Fragment implements SwipeRefreshLayout.OnR
 				// Make sure to clear parent cache
 				String s = Util.getRestUrl(context, null) + entry.getParent();
 				String parentCache = "directory-" + s.hashCode() + ".ser";
-				File file = new File(context.getCacheDir(), parentCache);
-				file.delete();
+				CachedMusicService.deleteCachedDirectory(context, parentCache);
 				return null;
 			}
 
@@ -694,6 +695,9 @@ public class SubsonicFragment extends Fragment implements SwipeRefreshLayout.OnR
 	protected void downloadRecursively(final String id, final String name, final boolean isDirectory, final boolean save, final boolean append, final boolean autoplay, final boolean shuffle, final boolean background, final boolean playNext) {
 		LoadingTask<List<MusicDirectory.Entry>> task = new LoadingTask<List<MusicDirectory.Entry>>(context) {
 			private static final int MAX_SONGS = 500;
+			// Replacing the queue and playing it is the only case where the first songs can go out before the rest are known
+			private final boolean startEarly = autoplay && !append && !background && !playNext;
+			private int startedCount = 0;
 
 			@Override
 			protected List<MusicDirectory.Entry> doInBackground() throws Throwable {
@@ -713,38 +717,65 @@ public class SubsonicFragment extends Fragment implements SwipeRefreshLayout.OnR
 					Collections.shuffle(root.getChildren());
 				}
 
-				List<MusicDirectory.Entry> songs = new LinkedList<MusicDirectory.Entry>();
-				getSongsRecursively(root, songs);
-				return songs;
-			}
-
-			private void getSongsRecursively(MusicDirectory parent, List<MusicDirectory.Entry> songs) throws Exception {
-				if (songs.size() > MAX_SONGS) {
-					return;
-				}
+				final List<MusicDirectory.Entry> songs = new LinkedList<MusicDirectory.Entry>();
+				final ProgressListener listener = this;
+				DirectoryExpander.expand(root, new DirectoryExpander.Loader() {
+					@Override
+					public MusicDirectory load(MusicDirectory.Entry dir) throws Exception {
+						MusicService musicService = MusicServiceFactory.getMusicService(context);
+						if(Util.isTagBrowsing(context) && !Util.isOffline(context)) {
+							return musicService.getAlbum(dir.getId(), dir.getTitle(), false, context, listener);
+						} else {
+							return musicService.getMusicDirectory(dir.getId(), dir.getTitle(), false, context, listener);
+						}
+					}
+				}, new DirectoryExpander.Visitor() {
+					@Override
+					public boolean visit(MusicDirectory dir) throws Exception {
+						if (songs.size() > MAX_SONGS) {
+							return false;
+						}
 
-				for (MusicDirectory.Entry song : parent.getChildren(false, true)) {
-					if (!song.isVideo()) {
-						songs.add(song);
+						boolean first = songs.isEmpty();
+						for (MusicDirectory.Entry song : dir.getChildren(false, true)) {
+							if (!song.isVideo()) {
+								songs.add(song);
+							}
+						}
+						if(first && startEarly && !songs.isEmpty()) {
+							startPlaying(new ArrayList<MusicDirectory.Entry>(songs));
+						}
+						return true;
 					}
-				}
-				for (MusicDirectory.Entry dir : parent.getChildren(true, false)) {
-					MusicService musicService = MusicServiceFactory.getMusicService(context);
+				});
+				return songs;
+			}
 
-					MusicDirectory musicDirectory;
-					if(Util.isTagBrowsing(context) && !Util.isOffline(context)) {
-						musicDirectory = musicService.getAlbum(dir.getId(), dir.getTitle(), false, context, this);
-					} else {
-						musicDirectory = musicService.getMusicDirectory(dir.getId(), dir.getTitle(), false, context, this);
+			private void startPlaying(final List<MusicDirectory.Entry> firstSongs) {
+				getHandler().post(new Runnable() {
+					@Override
+					public void run() {
+						DownloadService downloadService = getDownloadService();
+						if(downloadService != null && !isCancelled()) {
+							downloadService.clear();
+							warnIfNetworkOrStorageUnavailable();
+							downloadService.download(firstSongs, save, true, false, false);
+							startedCount = firstSongs.size();
+						}
 					}
-					getSongsRecursively(musicDirectory, songs);
-				}
+				});
 			}
 
 			@Override
 			protected void done(List<MusicDirectory.Entry> songs) {
 				DownloadService downloadService = getDownloadService();
-				if (!songs.isEmpty() && downloadService != null) {
+				if(startedCount > 0) {
+					// Already playing the first part, just queue up the rest behind it
+					if(downloadService != null) {
+						downloadService.download(songs.subList(startedCount, songs.size()), save, false, false, false);
+					}
+					Util.startActivityWithoutTransition(context, DownloadActivity.class);
+				} else if (!songs.isEmpty() && downloadService != null) {
 					if (!append) {
 						downloadService.clear();
 					}
@@ -20,13 +20,20 @@ package github.daneren2005.dsub.service;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.http.HttpResponse;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.util.Log;
 
 import github.daneren2005.dsub.domain.Bookmark;
 import github.daneren2005.dsub.domain.ChatMessage;
@@ -42,9 +49,12 @@ import github.daneren2005.dsub.domain.SearchCritera;
 import github.daneren2005.dsub.domain.SearchResult;
 import github.daneren2005.dsub.domain.Share;
 import github.daneren2005.dsub.domain.Version;
+import github.daneren2005.dsub.util.CoverArtIndex;
 import github.daneren2005.dsub.util.SilentBackgroundTask;
 import github.daneren2005.dsub.util.ProgressListener;
 import github.daneren2005.dsub.util.TimeLimitedCache;
+import github.daneren2005.dsub.util.TimeLimitedLruCache;
+import github.daneren2005.dsub.util.UpdateListener;
 import github.daneren2005.dsub.util.FileUtil;
 import github.daneren2005.dsub.util.Util;
 
@@ -56,6 +66,7 @@ public class CachedMusicService implements MusicService {
 
     private static final int MUSIC_DIR_CACHE_SIZE = 20;
     private static final int TTL_MUSIC_DIR = 5 * 60; // Five minutes
+	private static final long REVALIDATE_INTERVAL = 60 * 1000L;
 
 	private final RESTMusicService musicService;
     private final TimeLimitedCache<Boolean> cachedLicenseValid = new TimeLimitedCache<Boolean>(120, TimeUnit.SECONDS);
@@ -63,6 +74,10 @@ public class CachedMusicService implements MusicService {
     private final TimeLimitedCache<List<Playlist>> cachedPlaylists = new TimeLimitedCache<List<Playlist>>(3600, TimeUnit.SECONDS);
     private final TimeLimitedCache<List<MusicFolder>> cachedMusicFolders = new TimeLimitedCache<List<MusicFolder>>(10 * 3600, TimeUnit.SECONDS);
 	private final TimeLimitedCache<List<PodcastChannel>> cachedPodcastChannels = new TimeLimitedCache<List<PodcastChannel>>(10 * 3600, TimeUnit.SECONDS);
+	// Directories, artists and albums weighed by their number of children, shared so a file deleted from elsewhere can be dropped too
+	private static final TimeLimitedLruCache<MusicDirectory> cachedDirectories = new TimeLimitedLruCache<MusicDirectory>(5000, 10 * 60, TimeUnit.SECONDS);
+	private final Map<String, Long> lastRevalidated = new HashMap<String, Long>();
+	private final ExecutorService revalidateExecutor = Executors.newSingleThreadExecutor();
     private String restUrl;
 	private boolean isTagBrowsing = false;
 
@@ -133,48 +148,83 @@ public class CachedMusicService implements MusicService {
     }
 
     @Override
-    public MusicDirectory getMusicDirectory(String id, String name, boolean refresh, Context context, ProgressListener progressListener) throws Exception {
+    public MusicDirectory getMusicDirectory(final String id, final String name, boolean refresh, final Context context, ProgressListener progressListener) throws Exception {
 		MusicDirectory dir = null;
 
+		String cacheName = getCacheName(context, "directory", id);
 		if(!refresh) {
-			dir = FileUtil.deserialize(context, getCacheName(context, "directory", id), MusicDirectory.class);
+			MusicDirectory cached = getCachedDirectory(context, cacheName);
+			if(cached != null) {
+				// Callers are free to change what they get back, so the cached one is never handed out
+				dir = FileUtil.copy(cached, MusicDirectory.class);
+				revalidateDirectory(context, cacheName, cached, progressListener, new Callable<MusicDirectory>() {
+					@Override
+					public MusicDirectory call() throws Exception {
+						return musicService.getMusicDirectory(id, name, false, context, null);
+					}
+				});
+			}
 		}
 
 		if(dir == null) {
 			dir = musicService.getMusicDirectory(id, name, refresh, context, progressListener);
-			FileUtil.serialize(context, dir, getCacheName(context, "directory", id));
+			putCachedDirectory(context, cacheName, dir);
+			CoverArtIndex.getInstance(context).put(false, id, dir);
 		}
 
 		return dir;
     }
 
 	@Override
-	public MusicDirectory getArtist(String id, String name, boolean refresh, Context context, ProgressListener progressListener) throws Exception {
+	public MusicDirectory getArtist(final String id, final String name, boolean refresh, final Context context, ProgressListener progressListener) throws Exception {
 		MusicDirectory dir = null;
 
+		String cacheName = getCacheName(context, "artist", id);
 		if(!refresh) {
-			dir = FileUtil.deserialize(context, getCacheName(context, "artist", id), MusicDirectory.class);
+			MusicDirectory cached = getCachedDirectory(context, cacheName);
+			if(cached != null) {
+				// Callers are free to change what they get back, so the cached one is never handed out
+				dir = FileUtil.copy(cached, MusicDirectory.class);
+				revalidateDirectory(context, cacheName, cached, progressListener, new Callable<MusicDirectory>() {
+					@Override
+					public MusicDirectory call() throws Exception {
+						return musicService.getArtist(id, name, false, context, null);
+					}
+				});
+			}
 		}
 
 		if(dir == null) {
 			dir = musicService.getArtist(id, name, refresh, context, progressListener);
-			FileUtil.serialize(context, dir, getCacheName(context, "artist", id));
+			putCachedDirectory(context, cacheName, dir);
 		}
 
 		return dir;
 	}
 
 	@Override
-	public MusicDirectory getAlbum(String id, String name, boolean refresh, Context context, ProgressListener progressListener) throws Exception {
+	public MusicDirectory getAlbum(final String id, final String name, boolean refresh, final Context context, ProgressListener progressListener) throws Exception {
 		MusicDirectory dir = null;
 
+		String cacheName = getCacheName(context, "album", id);
 		if(!refresh) {
-			dir = FileUtil.deserialize(context, getCacheName(context, "album", id), MusicDirectory.class);
+			MusicDirectory cached = getCachedDirectory(context, cacheName);
+			if(cached != null) {
+				// Callers are free to change what they get back, so the cached one is never handed out
+				dir = FileUtil.copy(cached, MusicDirectory.class);
+				revalidateDirectory(context, cacheName, cached, progressListener, new Callable<MusicDirectory>() {
+					@Override
+					public MusicDirectory call() throws Exception {
+						return musicService.getAlbum(id, name, false, context, null);
+					}
+				});
+			}
 		}
 
 		if(dir == null) {
 			dir = musicService.getAlbum(id, name, refresh, context, progressListener);
-			FileUtil.serialize(context, dir, getCacheName(context, "album", id));
+			putCachedDirectory(context, cacheName, dir);
+			CoverArtIndex.getInstance(context).put(true, id, dir);
 		}
 
 		return dir;
@@ -225,37 +275,37 @@ public class CachedMusicService implements MusicService {
     @Override
     public void createPlaylist(String id, String name, List<MusicDirectory.Entry> entries, Context context, ProgressListener progressListener) throws Exception {
 		cachedPlaylists.clear();
-		Util.delete(new File(context.getCacheDir(), getCacheName(context, "playlist")));
+		FileUtil.deleteSerialized(context, getCacheName(context, "playlist"));
         musicService.createPlaylist(id, name, entries, context, progressListener);
     }
 	
 	@Override
 	public void deletePlaylist(String id, Context context, ProgressListener progressListener) throws Exception {
-		Util.delete(new File(context.getCacheDir(), getCacheName(context, "playlist")));
+		FileUtil.deleteSerialized(context, getCacheName(context, "playlist"));
 		musicService.deletePlaylist(id, context, progressListener);
 	}
 	
 	@Override
 	public void addToPlaylist(String id, List<MusicDirectory.Entry> toAdd, Context context, ProgressListener progressListener) throws Exception {
-		Util.delete(new File(context.getCacheDir(), getCacheName(context, "playlist", id)));
+		FileUtil.deleteSerialized(context, getCacheName(context, "playlist", id));
 		musicService.addToPlaylist(id, toAdd, context, progressListener);
 	}
 	
 	@Override
 	public void removeFromPlaylist(String id, List<Integer> toRemove, Context context, ProgressListener progressListener) throws Exception {
-		Util.delete(new File(context.getCacheDir(), getCacheName(context, "playlist", id)));
+		FileUtil.deleteSerialized(context, getCacheName(context, "playlist", id));
 		musicService.removeFromPlaylist(id, toRemove, context, progressListener);
 	}
 	
 	@Override
 	public void overwritePlaylist(String id, String name, int toRemove, List<MusicDirectory.Entry> toAdd, Context context, ProgressListener progressListener) throws Exception {
-		Util.delete(new File(context.getCacheDir(), getCacheName(context, "playlist", id)));
+		FileUtil.deleteSerialized(context, getCacheName(context, "playlist", id));
 		musicService.overwritePlaylist(id, name, toRemove, toAdd, context, progressListener);
 	}
 	
 	@Override
 	public void updatePlaylist(String id, String name, String comment, boolean pub, Context context, ProgressListener progressListener) throws Exception {
-		Util.delete(new File(context.getCacheDir(), getCacheName(context, "playlist", id)));
+		FileUtil.deleteSerialized(context, getCacheName(context, "playlist", id));
 		musicService.updatePlaylist(id, name, comment, pub, context, progressListener);
 	}
 
@@ -304,6 +354,11 @@ public class CachedMusicService implements MusicService {
         return musicService.getDownloadInputStream(context, song, offset, maxBitrate, task);
     }
 
+	@Override
+	public HttpResponse getDownloadRangeInputStream(Context context, MusicDirectory.Entry song, long start, long end, int maxBitrate) throws Exception {
+		return musicService.getDownloadRangeInputStream(context, song, start, end, maxBitrate);
+	}
+
 	@Override
 	public String getMusicUrl(Context context, MusicDirectory.Entry song, int maxBitrate) throws Exception {
 		return musicService.getMusicUrl(context, song, maxBitrate);
@@ -464,14 +519,14 @@ public class CachedMusicService implements MusicService {
 	
 	@Override
 	public void createPodcastChannel(String url, Context context, ProgressListener progressListener) throws Exception{
-		Util.delete(new File(context.getCacheDir(), getCacheName(context, "podcast")));
+		FileUtil.deleteSerialized(context, getCacheName(context, "podcast"));
 		cachedPodcastChannels.clear();
 		musicService.createPodcastChannel(url, context, progressListener);
 	}
 	
 	@Override
 	public void deletePodcastChannel(String id, Context context, ProgressListener progressListener) throws Exception{
-		Util.delete(new File(context.getCacheDir(), getCacheName(context, "podcast")));
+		FileUtil.deleteSerialized(context, getCacheName(context, "podcast"));
 		cachedPodcastChannels.clear();
 		musicService.deletePodcastChannel(id, context, progressListener);
 	}
@@ -516,9 +571,79 @@ public class CachedMusicService implements MusicService {
     	musicService.setInstance(instance);
     }
   
+	private MusicDirectory getCachedDirectory(Context context, String cacheName) {
+		MusicDirectory dir = cachedDirectories.get(cacheName);
+		if(dir == null) {
+			dir = FileUtil.deserialize(context, cacheName, MusicDirectory.class);
+			if(dir != null) {
+				cachedDirectories.put(cacheName, dir, dir.getChildrenSize());
+			}
+			Log.d(TAG, "Directory memory cache missed " + cachedDirectories.getMissCount() + " times, hit " + cachedDirectories.getHitCount());
+		}
+		return dir;
+	}
+	private void putCachedDirectory(Context context, String cacheName, MusicDirectory dir) {
+		FileUtil.serialize(context, dir, cacheName);
+		// Keep a copy, the one passed in is about to be returned to the caller
+		cachedDirectories.put(cacheName, FileUtil.copy(dir, MusicDirectory.class), dir.getChildrenSize());
+	}
+
+	/**
+	 * Drops a cached directory from memory as well as disk, so the next time it is opened it comes from the server
+	 */
+	public static void deleteCachedDirectory(Context context, String cacheName) {
+		cachedDirectories.remove(cacheName);
+		FileUtil.deleteSerialized(context, cacheName);
+	}
+
+	/**
+	 * Refreshes a directory that was just served from cache in the background, and hands the new copy to the listener if it changed.
+	 * Only done for callers that can do something with the update, and not more than once a minute for the same directory.
+	 */
+	private void revalidateDirectory(final Context context, final String cacheName, final MusicDirectory cached, ProgressListener progressListener, final Callable<MusicDirectory> loader) {
+		if(!(progressListener instanceof UpdateListener)) {
+			return;
+		}
+		final UpdateListener<MusicDirectory> listener = (UpdateListener<MusicDirectory>) progressListener;
+
+		long now = System.currentTimeMillis();
+		synchronized (lastRevalidated) {
+			Long last = lastRevalidated.get(cacheName);
+			if(last != null && (now - last) < REVALIDATE_INTERVAL) {
+				return;
+			}
+			lastRevalidated.put(cacheName, now);
+
+			// Anything past the interval no longer holds anything back
+			if(lastRevalidated.size() > MUSIC_DIR_CACHE_SIZE) {
+				Iterator<Long> it = lastRevalidated.values().iterator();
+				while(it.hasNext()) {
+					if((now - it.next()) >= REVALIDATE_INTERVAL) {
+						it.remove();
+					}
+				}
+			}
+		}
+
+		revalidateExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					MusicDirectory dir = loader.call();
+					if(!dir.isSameAs(cached)) {
+						Log.i(TAG, "Cached " + cacheName + " was out of date");
+						putCachedDirectory(context, cacheName, dir);
+						listener.onUpdate(dir);
+					}
+				} catch(Exception e) {
+					Log.w(TAG, "Failed to revalidate " + cacheName, e);
+				}
+			}
+		});
+	}
+
   	private String getCacheName(Context context, String name, String id) {
-  		String s = musicService.getRestUrl(context, null, false) + id;
-  		return name + "-" + s.hashCode() + ".ser";
+  		return musicService.getCacheName(context, name, id);
   	}
   	private String getCacheName(Context context, String name) {
   		String s = musicService.getRestUrl(context, null, false);
@@ -534,6 +659,10 @@ public class CachedMusicService implements MusicService {
             cachedIndexes.clear();
             cachedPlaylists.clear();
 			cachedPodcastChannels.clear();
+			cachedDirectories.clear();
+			synchronized (lastRevalidated) {
+				lastRevalidated.clear();
+			}
             restUrl = newUrl;
 			isTagBrowsing = newIsTagBrowsing;
         }
@@ -19,11 +19,20 @@
 package github.daneren2005.dsub.service;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.FileNotFoundException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import android.content.Context;
 import android.graphics.Bitmap;
@@ -32,6 +41,7 @@ import android.os.PowerManager;
 import android.util.DisplayMetrics;
 import android.util.Log;
 import github.daneren2005.dsub.domain.MusicDirectory;
+import github.daneren2005.dsub.util.BandwidthLimiter;
 import github.daneren2005.dsub.util.SilentBackgroundTask;
 import github.daneren2005.dsub.util.FileUtil;
 import github.daneren2005.dsub.util.Util;
@@ -42,6 +52,7 @@ import org.apache.http.Header;
 
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
+import org.apache.http.conn.ConnectionReleaseTrigger;
 
 /**
  * @author Sindre Mehus
@@ -50,6 +61,13 @@ import org.apache.http.HttpStatus;
 public class DownloadFile implements BufferFile {
     private static final String TAG = DownloadFile.class.getSimpleName();
     private static final int MAX_FAILURES = 5;
+	private static final int SEGMENT_COUNT = 4;
+	private static final long SEGMENT_MIN_SIZE = 4L * 1024L * 1024L;
+	// Sized to the download concurrency when each segmented download starts
+	private static final ThreadPoolExecutor segmentExecutor = new ThreadPoolExecutor(SEGMENT_COUNT, SEGMENT_COUNT, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+	static {
+		segmentExecutor.allowCoreThreadTimeOut(true);
+	}
     private final Context context;
     private final MusicDirectory.Entry song;
     private final File partialFile;
@@ -68,6 +86,7 @@ public class DownloadFile implements BufferFile {
 	private Long contentLength = null;
 	private long currentSpeed = 0;
 	private boolean rateLimit = false;
+	private boolean segmentsUnsupported = false;
 
     public DownloadFile(Context context, MusicDirectory.Entry song, boolean save) {
         this.context = context;
@@ -150,6 +169,15 @@ public class DownloadFile implements BufferFile {
 		return currentSpeed;
 	}
 
+	public int getProgress() {
+		long size = getEstimatedSize();
+		if(size <= 0) {
+			return 0;
+		}
+
+		return (int) Math.min(100L, getCurrentSize() * 100L / size);
+	}
+
     public synchronized void download() {
     	rateLimit = false;
         preDownload();
@@ -335,11 +363,43 @@ public class DownloadFile implements BufferFile {
 
     private class DownloadTask extends SilentBackgroundTask<Void> {
 		private MusicService musicService;
+		private final List<InputStream> openStreams = new ArrayList<InputStream>();
 
 		public DownloadTask(Context context) {
 			super(context);
 		}
 
+		@Override
+		public void cancel() {
+			super.cancel();
+
+			// Drop every open connection so blocked reads return right away instead of waiting on the socket
+			List<InputStream> streams;
+			synchronized (openStreams) {
+				streams = new ArrayList<InputStream>(openStreams);
+				openStreams.clear();
+			}
+			for(InputStream in: streams) {
+				abort(in);
+			}
+		}
+
+		private InputStream track(InputStream in) {
+			synchronized (openStreams) {
+				if(isCancelled()) {
+					abort(in);
+				} else {
+					openStreams.add(in);
+				}
+			}
+			return in;
+		}
+		private void release(InputStream in) {
+			synchronized (openStreams) {
+				openStreams.remove(in);
+			}
+		}
+
         @Override
         public Void doInBackground() throws InterruptedException {
             InputStream in = null;
@@ -397,14 +457,20 @@ public class DownloadFile implements BufferFile {
 							contentLength = Long.parseLong(contentLengthString);
 						}
 					}
-					in = response.getEntity().getContent();
+					in = track(response.getEntity().getContent());
 					boolean partial = response.getStatusLine().getStatusCode() == HttpStatus.SC_PARTIAL_CONTENT;
+					long offset = partial ? partialFile.length() : 0L;
 					if (partial) {
-						Log.i(TAG, "Executed partial HTTP GET, skipping " + partialFile.length() + " bytes");
+						Log.i(TAG, "Executed partial HTTP GET, skipping " + offset + " bytes");
 					}
 
 					out = new FileOutputStream(partialFile, partial);
-					long n = copy(in, out);
+					long n;
+					if(isSegmentable(contentLengthHeader)) {
+						n = segmentedCopy(in, out, offset, contentLength);
+					} else {
+						n = copy(in, out);
+					}
 					Log.i(TAG, "Downloaded " + n + " bytes to " + partialFile);
 					out.flush();
 					out.close();
@@ -459,6 +525,7 @@ public class DownloadFile implements BufferFile {
                     Log.w(TAG, "Failed to download '" + song + "'.", x);
                 }
             } finally {
+				release(in);
                 Util.close(in);
                 Util.close(out);
                 if (wakeLock != null) {
@@ -470,7 +537,7 @@ public class DownloadFile implements BufferFile {
 				}
                 new CacheCleaner(context, DownloadService.getInstance()).cleanSpace();
 				if(DownloadService.getInstance() != null) {
-					DownloadService.getInstance().checkDownloads();
+					DownloadService.getInstance().postCheckDownloads();
 				}
             }
 
@@ -506,34 +573,129 @@ public class DownloadFile implements BufferFile {
             }
         }
 
-        private long copy(final InputStream in, OutputStream out) throws IOException, InterruptedException {
+		private boolean isSegmentable(Header contentLengthHeader) {
+			// Only split raw files we are not streaming from: transcoded streams don't have a stable length and
+			// MediaPlayer reads the partial file sequentially while it is still being written
+			return contentLengthHeader != null && contentLength != null && contentLength >= SEGMENT_MIN_SIZE && !rateLimit && !isPlaying
+				&& !segmentsUnsupported && bitRate == 0 && song.getTranscodedSuffix() == null;
+		}
 
-            // Start a thread that will close the input stream if the task is
-            // cancelled, thus causing the copy() method to return.
-            new Thread("DownloadFile_copy") {
-                @Override
-                public void run() {
-                    while (true) {
-                        Util.sleepQuietly(3000L);
-                        if (isCancelled()) {
-                            Util.close(in);
-                            return;
-                        }
-                        if (!isRunning()) {
-                            return;
-                        }
-                    }
-                }
-            }.start();
+		/**
+		 * Fetches the tail of the file as parallel ranged requests into sidecar files while the current response
+		 * fills in the head, then stitches them onto the end of the partial file in order.  The partial file only ever
+		 * grows contiguously so resuming from its length and streaming it stay valid.
+		 */
+		private long segmentedCopy(InputStream in, FileOutputStream out, long offset, long length) throws Exception {
+			setSegmentThreads(Util.getDownloadConcurrency(context) * SEGMENT_COUNT);
+			long segmentSize = length / SEGMENT_COUNT;
+			List<Segment> segments = new ArrayList<Segment>();
+			try {
+				for(int i = 1; i < SEGMENT_COUNT; i++) {
+					long start = offset + i * segmentSize;
+					long end = (i == SEGMENT_COUNT - 1) ? (offset + length) : (start + segmentSize);
+					Segment segment = new Segment(i, start, end - start);
+					segment.future = segmentExecutor.submit(segment);
+					segments.add(segment);
+				}
+				Log.i(TAG, "Downloading " + song + " in " + SEGMENT_COUNT + " segments of " + Util.formatBytes(segmentSize));
+
+				long count = copy(in, out, segmentSize);
+				abort(in);
+				if(isCancelled()) {
+					return count;
+				} else if(count < segmentSize) {
+					throw new IOException("Unexpected end of stream after " + count + " bytes");
+				}
+
+				for(Segment segment: segments) {
+					boolean success;
+					try {
+						success = segment.future.get();
+					} catch(ExecutionException e) {
+						success = false;
+					}
+
+					if(isCancelled()) {
+						return count;
+					} else if(success) {
+						FileInputStream segmentIn = new FileInputStream(segment.file);
+						try {
+							long transferred = segmentIn.getChannel().transferTo(0, segment.length, out.getChannel());
+							if(transferred != segment.length) {
+								throw new IOException("Only stitched " + transferred + " of " + segment.length + " bytes from " + segment.file);
+							}
+							count += transferred;
+						} finally {
+							Util.close(segmentIn);
+						}
+					} else {
+						// Fall back to a single request for whatever is left
+						Log.w(TAG, "Segment " + segment.index + " of " + song + " failed, downloading remainder directly");
+						out.flush();
+						HttpResponse response = musicService.getDownloadInputStream(context, song, offset + count, bitRate, DownloadTask.this);
+						if(response.getStatusLine().getStatusCode() != HttpStatus.SC_PARTIAL_CONTENT) {
+							abort(response.getEntity().getContent());
+							throw new IOException("Server did not honor range request for " + song);
+						}
+
+						InputStream remainder = track(response.getEntity().getContent());
+						try {
+							count += copy(remainder, out);
+						} finally {
+							release(remainder);
+							Util.close(remainder);
+						}
+						break;
+					}
+				}
 
+				return count;
+			} finally {
+				for(Segment segment: segments) {
+					segment.cancel();
+					Util.delete(segment.file);
+				}
+			}
+		}
+
+		private void setSegmentThreads(int threads) {
+			synchronized (segmentExecutor) {
+				// Core size can't go over the max, so grow the max first and shrink it last
+				if(threads > segmentExecutor.getMaximumPoolSize()) {
+					segmentExecutor.setMaximumPoolSize(threads);
+					segmentExecutor.setCorePoolSize(threads);
+				} else if(threads < segmentExecutor.getMaximumPoolSize()) {
+					segmentExecutor.setCorePoolSize(threads);
+					segmentExecutor.setMaximumPoolSize(threads);
+				}
+			}
+		}
+
+		private void abort(InputStream in) {
+			// Closing a managed entity stream drains the rest of the response, so drop the connection instead
+			if(in instanceof ConnectionReleaseTrigger) {
+				try {
+					((ConnectionReleaseTrigger) in).abortConnection();
+				} catch(Exception e) {
+					Log.w(TAG, "Failed to abort connection", e);
+				}
+			} else {
+				Util.close(in);
+			}
+		}
+
+        private long copy(final InputStream in, OutputStream out) throws IOException, InterruptedException {
+			return copy(in, out, Long.MAX_VALUE);
+		}
+        private long copy(final InputStream in, OutputStream out, long limit) throws IOException, InterruptedException {
             byte[] buffer = new byte[1024 * 16];
             long count = 0;
             int n;
             long lastLog = System.currentTimeMillis();
 			long lastCount = 0;
 
-			boolean activeLimit = rateLimit;
-            while (!isCancelled() && (n = in.read(buffer)) != -1) {
+			BandwidthLimiter limiter = rateLimit ? BandwidthLimiter.getInstance(context) : null;
+            while (!isCancelled() && count < limit && (n = in.read(buffer, 0, (int) Math.min(buffer.length, limit - count))) != -1) {
                 out.write(buffer, 0, n);
                 count += n;
 				lastCount += n;
@@ -544,24 +706,70 @@ public class DownloadFile implements BufferFile {
 					currentSpeed = lastCount / ((now - lastLog) / 1000L);
                     lastLog = now;
 					lastCount = 0;
-					
-					// Re-establish every few seconds whether screen is on or not
-					if(rateLimit) {
-						PowerManager pm = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
-						if(pm.isScreenOn()) {
-							activeLimit = true;
-						} else {
-							activeLimit = false;
-						}
-					}
                 }
-                
-                // If screen is on and rateLimit is true, stop downloading from exhausting bandwidth
-                if(activeLimit) {
-                	Thread.sleep(10L);
+
+                // If rateLimit is true, stop downloading from exhausting bandwidth
+                if(limiter != null) {
+					limiter.acquire(n);
                 }
             }
             return count;
         }
+
+		private class Segment implements Callable<Boolean> {
+			private final int index;
+			private final long start;
+			private final long length;
+			private final File file;
+			private Future<Boolean> future;
+			private volatile InputStream in;
+
+			public Segment(int index, long start, long length) {
+				this.index = index;
+				this.start = start;
+				this.length = length;
+				this.file = new File(partialFile.getPath() + ".seg" + index);
+			}
+
+			@Override
+			public Boolean call() {
+				OutputStream out = null;
+				try {
+					HttpResponse response = musicService.getDownloadRangeInputStream(context, song, start, start + length, bitRate);
+					in = track(response.getEntity().getContent());
+					if(response.getStatusLine().getStatusCode() != HttpStatus.SC_PARTIAL_CONTENT) {
+						segmentsUnsupported = true;
+						return false;
+					}
+
+					out = new FileOutputStream(file);
+					byte[] buffer = new byte[1024 * 16];
+					long remaining = length;
+					int n;
+					while(remaining > 0 && !isCancelled() && (n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+						out.write(buffer, 0, n);
+						remaining -= n;
+					}
+
+					return remaining == 0;
+				} catch(Exception e) {
+					if(!isCancelled()) {
+						Log.w(TAG, "Failed to download segment " + index + " of '" + song + "'", e);
+					}
+					return false;
+				} finally {
+					release(in);
+					abort(in);
+					Util.close(out);
+				}
+			}
+
+			public void cancel() {
+				if(future != null) {
+					future.cancel(true);
+				}
+				abort(in);
+			}
+		}
     }
 }
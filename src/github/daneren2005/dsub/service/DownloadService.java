@@ -113,7 +113,7 @@ public class DownloadService extends Service {
 	private DownloadFile currentPlaying;
 	private int currentPlayingIndex = -1;
 	private DownloadFile nextPlaying;
-	private DownloadFile currentDownloading;
+	private final List<DownloadFile> currentDownloads = new ArrayList<DownloadFile>();
 	private SilentBackgroundTask bufferTask;
 	private SilentBackgroundTask nextPlayingTask;
 	private PlayerState playerState = IDLE;
@@ -498,9 +498,13 @@ public class DownloadService extends Service {
 	}
 
 	public synchronized void clearBackground() {
-		if(currentDownloading != null && backgroundDownloadList.contains(currentDownloading)) {
-			currentDownloading.cancelDownload();
-			currentDownloading = null;
+		Iterator<DownloadFile> iterator = currentDownloads.iterator();
+		while(iterator.hasNext()) {
+			DownloadFile downloadFile = iterator.next();
+			if(backgroundDownloadList.contains(downloadFile)) {
+				downloadFile.cancelDownload();
+				iterator.remove();
+			}
 		}
 		backgroundDownloadList.clear();
 		revision++;
@@ -557,9 +561,13 @@ public class DownloadService extends Service {
 		reset();
 		downloadList.clear();
 		revision++;
-		if (currentDownloading != null) {
-			currentDownloading.cancelDownload();
-			currentDownloading = null;
+		Iterator<DownloadFile> iterator = currentDownloads.iterator();
+		while(iterator.hasNext()) {
+			DownloadFile downloadFile = iterator.next();
+			if(!backgroundDownloadList.contains(downloadFile)) {
+				downloadFile.cancelDownload();
+				iterator.remove();
+			}
 		}
 		setCurrentPlaying(null, false);
 
@@ -583,9 +591,8 @@ public class DownloadService extends Service {
 	}
 
 	public synchronized void remove(DownloadFile downloadFile) {
-		if (downloadFile == currentDownloading) {
-			currentDownloading.cancelDownload();
-			currentDownloading = null;
+		if (currentDownloads.remove(downloadFile)) {
+			downloadFile.cancelDownload();
 		}
 		if (downloadFile == currentPlaying) {
 			reset();
@@ -694,8 +701,11 @@ public class DownloadService extends Service {
 		return currentPlaying;
 	}
 
-	public DownloadFile getCurrentDownloading() {
-		return currentDownloading;
+	public synchronized DownloadFile getCurrentDownloading() {
+		return currentDownloads.isEmpty() ? null : currentDownloads.get(0);
+	}
+	public synchronized List<DownloadFile> getCurrentDownloads() {
+		return new ArrayList<DownloadFile>(currentDownloads);
 	}
 
 	public List<DownloadFile> getSongs() {
@@ -1179,10 +1189,11 @@ public class DownloadService extends Service {
 		if (remoteState != RemoteControlState.LOCAL) {
 			reset();
 
-			// Cancel current download, if necessary.
-			if (currentDownloading != null) {
-				currentDownloading.cancelDownload();
+			// Cancel current downloads, if necessary.
+			for(DownloadFile downloadFile: currentDownloads) {
+				downloadFile.cancelDownload();
 			}
+			currentDownloads.clear();
 
 			// Cancels current setup tasks
 			if(bufferTask != null && bufferTask.isRunning()) {
@@ -1571,73 +1582,85 @@ public class DownloadService extends Service {
 			return;
 		}
 
-		// Need to download current playing?
-		if (currentPlaying != null && currentPlaying != currentDownloading && !currentPlaying.isWorkDone()) {
-			// Cancel current download, if necessary.
-			if (currentDownloading != null) {
-				currentDownloading.cancelDownload();
-			}
-
-			currentDownloading = currentPlaying;
-			currentDownloading.download();
-			cleanupCandidates.add(currentDownloading);
+		// Build the download queue in priority order: current playing, next song, preload window, background
+		List<DownloadFile> wanted = new ArrayList<DownloadFile>();
+		int concurrency = Util.getDownloadConcurrency(this);
+		if (currentPlaying != null && !currentPlaying.isWorkDone()) {
+			wanted.add(currentPlaying);
 		}
 
-		// Find a suitable target for download.
-		else if (currentDownloading == null || currentDownloading.isWorkDone() || currentDownloading.isFailed() && (!downloadList.isEmpty() || !backgroundDownloadList.isEmpty())) {
-			currentDownloading = null;
-			int n = size();
-
+		int n = size();
+		int start = currentPlaying == null ? 0 : getCurrentPlayingIndex();
+		if(start == -1) {
+			start = 0;
+		}
+		if(n != 0) {
+			int preloadCount = Util.getPreloadCount(this);
 			int preloaded = 0;
-
-			if(n != 0) {
-				int start = currentPlaying == null ? 0 : getCurrentPlayingIndex();
-				if(start == -1) {
-					start = 0;
-				}
-				int i = start;
-				do {
-					DownloadFile downloadFile = downloadList.get(i);
+			int i = start;
+			do {
+				DownloadFile downloadFile = downloadList.get(i);
+				if(downloadFile != currentPlaying) {
 					if (!downloadFile.isWorkDone() && !downloadFile.isFailedMax()) {
-						if (downloadFile.shouldSave() || preloaded < Util.getPreloadCount(this)) {
-							currentDownloading = downloadFile;
-							currentDownloading.download();
-							cleanupCandidates.add(currentDownloading);
-							if(i == (start + 1)) {
-								setNextPlayerState(DOWNLOADING);
-							}
-							break;
+						if (downloadFile.shouldSave() || preloaded < preloadCount) {
+							wanted.add(downloadFile);
+							preloaded++;
 						}
-					} else if (currentPlaying != downloadFile) {
+					} else {
 						preloaded++;
 					}
+				}
+
+				i = (i + 1) % n;
+			} while (i != start && wanted.size() < concurrency);
+		}
 
-					i = (i + 1) % n;
-				} while (i != start);
+		for(int i = 0; i < backgroundDownloadList.size() && wanted.size() < concurrency; i++) {
+			DownloadFile downloadFile = backgroundDownloadList.get(i);
+			if(downloadFile.isWorkDone() && (!downloadFile.shouldSave() || downloadFile.isSaved())) {
+				// Don't need to keep list like active song list
+				backgroundDownloadList.remove(i);
+				revision++;
+				i--;
+			} else if(!downloadFile.isFailedMax() && !wanted.contains(downloadFile)) {
+				wanted.add(downloadFile);
 			}
+		}
+		if(wanted.size() > concurrency) {
+			wanted = wanted.subList(0, concurrency);
+		}
 
-			if((preloaded + 1 == n || preloaded >= Util.getPreloadCount(this) || downloadList.isEmpty()) && !backgroundDownloadList.isEmpty()) {
-				for(int i = 0; i < backgroundDownloadList.size(); i++) {
-					DownloadFile downloadFile = backgroundDownloadList.get(i);
-					if(downloadFile.isWorkDone() && (!downloadFile.shouldSave() || downloadFile.isSaved())) {
-						// Don't need to keep list like active song list
-						backgroundDownloadList.remove(i);
-						revision++;
-						i--;
-					} else {
-						if(!downloadFile.isFailedMax()) {
-							currentDownloading = downloadFile;
-							currentDownloading.download();
-							cleanupCandidates.add(currentDownloading);
-							break;
-						}
-					}
+		// Preempt anything which has been bumped out of the available slots.  Finished, failed or cancelled tasks are on their way out
+		// already, and cancelling them again would interrupt whatever their thread has moved on to.
+		Iterator<DownloadFile> iterator = currentDownloads.iterator();
+		while(iterator.hasNext()) {
+			DownloadFile downloadFile = iterator.next();
+			boolean stopping = downloadFile.isWorkDone() || downloadFile.isFailed() || downloadFile.isDownloadCancelled();
+			if(stopping || !wanted.contains(downloadFile)) {
+				if(!stopping && downloadFile.isDownloading()) {
+					downloadFile.cancelDownload();
+				}
+				iterator.remove();
+			}
+		}
+
+		DownloadFile next = (n > 1 && currentPlaying != null) ? downloadList.get((start + 1) % n) : null;
+		for(DownloadFile downloadFile: wanted) {
+			// A failed download that hasn't hit its limit gets another go right away
+			if(!downloadFile.isDownloading() || downloadFile.isDownloadCancelled() || downloadFile.isFailed()) {
+				downloadFile.download();
+				cleanupCandidates.add(downloadFile);
+				if(downloadFile == next) {
+					setNextPlayerState(DOWNLOADING);
 				}
 			}
+			if(!currentDownloads.contains(downloadFile)) {
+				currentDownloads.add(downloadFile);
+			}
 		}
 
 		if(!backgroundDownloadList.isEmpty()) {
-			Util.showDownloadingNotification(this, currentDownloading, backgroundDownloadList.size());
+			Util.showDownloadingNotification(this, getCurrentDownloading(), backgroundDownloadList.size());
 			downloadOngoing = true;
 		} else if(backgroundDownloadList.isEmpty() && downloadOngoing) {
 			Util.hideDownloadingNotification(this);
@@ -1647,6 +1670,17 @@ public class DownloadService extends Service {
 		// Delete obsolete .partial and .complete files.
 		cleanup();
 	}
+	/**
+	 * Checks downloads from the main thread, for download tasks to call once they finish without doing it from their own worker thread
+	 */
+	public void postCheckDownloads() {
+		handler.post(new Runnable() {
+			@Override
+			public void run() {
+				checkDownloads();
+			}
+		});
+	}
 
 	private synchronized void checkShufflePlay() {
 
@@ -1698,7 +1732,7 @@ public class DownloadService extends Service {
 		Iterator<DownloadFile> iterator = cleanupCandidates.iterator();
 		while (iterator.hasNext()) {
 			DownloadFile downloadFile = iterator.next();
-			if (downloadFile != currentPlaying && downloadFile != currentDownloading) {
+			if (downloadFile != currentPlaying && !currentDownloads.contains(downloadFile)) {
 				if (downloadFile.cleanup()) {
 					iterator.remove();
 				}
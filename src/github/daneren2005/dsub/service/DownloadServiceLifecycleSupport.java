@@ -258,7 +258,7 @@ public class DownloadServiceLifecycleSupport {
 		}
 
 		Log.i(TAG, "Serialized currentPlayingIndex: " + state.currentPlayingIndex + ", currentPlayingPosition: " + state.currentPlayingPosition);
-		FileUtil.serialize(downloadService, state, FILENAME_DOWNLOADS_SER);
+		FileUtil.serializeNow(downloadService, state, FILENAME_DOWNLOADS_SER);
 	}
 
 	private void deserializeDownloadQueueNow() {
@@ -97,6 +97,8 @@ public interface MusicService {
 
     HttpResponse getDownloadInputStream(Context context, MusicDirectory.Entry song, long offset, int maxBitrate, SilentBackgroundTask task) throws Exception;
 
+	HttpResponse getDownloadRangeInputStream(Context context, MusicDirectory.Entry song, long start, long end, int maxBitrate) throws Exception;
+
 	String getMusicUrl(Context context, MusicDirectory.Entry song, int maxBitrate) throws Exception;
 
     Version getLocalVersion(Context context) throws Exception;
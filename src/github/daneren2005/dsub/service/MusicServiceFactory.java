@@ -27,10 +27,18 @@ import github.daneren2005.dsub.util.Util;
  */
 public class MusicServiceFactory {
 
-    private static final MusicService REST_MUSIC_SERVICE = new CachedMusicService(new RESTMusicService());
+    private static final RESTMusicService REST_SERVICE = new RESTMusicService();
+    private static final MusicService REST_MUSIC_SERVICE = new CachedMusicService(REST_SERVICE);
     private static final MusicService OFFLINE_MUSIC_SERVICE = new OfflineMusicService();
 
     public static MusicService getMusicService(Context context) {
         return Util.isOffline(context) ? OFFLINE_MUSIC_SERVICE : REST_MUSIC_SERVICE;
     }
+
+	public static void prewarm(Context context) {
+		REST_SERVICE.prewarm(context);
+	}
+	public static void stopPrewarm(Context context) {
+		REST_SERVICE.stopPrewarm(context);
+	}
 }
@@ -48,6 +48,7 @@ import github.daneren2005.dsub.domain.SearchCritera;
 import github.daneren2005.dsub.domain.SearchResult;
 import github.daneren2005.dsub.util.Constants;
 import github.daneren2005.dsub.util.FileUtil;
+import github.daneren2005.dsub.util.OfflineJournal;
 import github.daneren2005.dsub.util.ProgressListener;
 import github.daneren2005.dsub.util.Util;
 import java.io.*;
@@ -487,23 +488,13 @@ public class OfflineMusicService extends RESTMusicService {
 		SharedPreferences prefs = Util.getPreferences(context);
 		String cacheLocn = prefs.getString(Constants.PREFERENCES_KEY_CACHE_LOCATION, null);
 
-		SharedPreferences offline = Util.getOfflineSync(context);
-		int scrobbles = offline.getInt(Constants.OFFLINE_SCROBBLE_COUNT, 0);
-		scrobbles++;
-		SharedPreferences.Editor offlineEditor = offline.edit();
-		
+		OfflineJournal journal = OfflineJournal.getInstance(context);
 		if(id.indexOf(cacheLocn) != -1) {
 			String scrobbleSearchCriteria = Util.parseOfflineIDSearch(context, id, cacheLocn);
-			offlineEditor.putString(Constants.OFFLINE_SCROBBLE_SEARCH + scrobbles, scrobbleSearchCriteria);
-			offlineEditor.remove(Constants.OFFLINE_SCROBBLE_ID + scrobbles);
+			journal.addScrobble(null, scrobbleSearchCriteria, System.currentTimeMillis());
 		} else {
-			offlineEditor.putString(Constants.OFFLINE_SCROBBLE_ID + scrobbles, id);
-			offlineEditor.remove(Constants.OFFLINE_SCROBBLE_SEARCH + scrobbles);
+			journal.addScrobble(id, null, System.currentTimeMillis());
 		}
-		
-		offlineEditor.putLong(Constants.OFFLINE_SCROBBLE_TIME + scrobbles, System.currentTimeMillis());
-		offlineEditor.putInt(Constants.OFFLINE_SCROBBLE_COUNT, scrobbles);
-		offlineEditor.commit();
     }
 
     @Override
@@ -566,24 +557,14 @@ public class OfflineMusicService extends RESTMusicService {
 		SharedPreferences prefs = Util.getPreferences(context);
 		String cacheLocn = prefs.getString(Constants.PREFERENCES_KEY_CACHE_LOCATION, null);
 
-		SharedPreferences offline = Util.getOfflineSync(context);
-		int stars = offline.getInt(Constants.OFFLINE_STAR_COUNT, 0);
-		stars++;
-		SharedPreferences.Editor offlineEditor = offline.edit();
-
+		OfflineJournal journal = OfflineJournal.getInstance(context);
 		String id = ids.get(0);
 		if(id.indexOf(cacheLocn) != -1) {
 			String searchCriteria = Util.parseOfflineIDSearch(context, id, cacheLocn);
-			offlineEditor.putString(Constants.OFFLINE_STAR_SEARCH + stars, searchCriteria);
-			offlineEditor.remove(Constants.OFFLINE_STAR_ID + stars);
+			journal.addStar(null, searchCriteria, starred);
 		} else {
-			offlineEditor.putString(Constants.OFFLINE_STAR_ID + stars, id);
-			offlineEditor.remove(Constants.OFFLINE_STAR_SEARCH + stars);
+			journal.addStar(id, null, starred);
 		}
-		
-		offlineEditor.putBoolean(Constants.OFFLINE_STAR_SETTING + stars, starred);
-		offlineEditor.putInt(Constants.OFFLINE_STAR_COUNT, stars);
-		offlineEditor.commit();
 	}
 	
 	@Override
@@ -22,20 +22,34 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.Reader;
+import java.net.InetAddress;
+import java.net.Socket;
 import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.NameValuePair;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
@@ -44,10 +58,12 @@ import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.conn.params.ConnManagerParams;
 import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.LayeredSocketFactory;
 import org.apache.http.conn.scheme.PlainSocketFactory;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.conn.scheme.SocketFactory;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.message.BasicHeader;
@@ -59,12 +75,16 @@ import org.apache.http.protocol.BasicHttpContext;
 import org.apache.http.protocol.ExecutionContext;
 import org.apache.http.protocol.HttpContext;
 
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.content.pm.PackageInfo;
 import android.graphics.Bitmap;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
+import android.util.DisplayMetrics;
 import android.util.Log;
 import github.daneren2005.dsub.R;
 import github.daneren2005.dsub.domain.*;
@@ -92,11 +112,14 @@ import github.daneren2005.dsub.service.parser.VersionParser;
 import github.daneren2005.dsub.service.ssl.SSLSocketFactory;
 import github.daneren2005.dsub.service.ssl.TrustSelfSignedStrategy;
 import github.daneren2005.dsub.util.SilentBackgroundTask;
+import github.daneren2005.dsub.util.SingleFlight;
 import github.daneren2005.dsub.util.Constants;
+import github.daneren2005.dsub.util.OfflineJournal;
 import github.daneren2005.dsub.util.FileUtil;
 import github.daneren2005.dsub.util.ProgressListener;
 import github.daneren2005.dsub.util.Util;
 import java.io.*;
+import java.security.MessageDigest;
 import java.util.zip.GZIPInputStream;
 
 /**
@@ -120,8 +143,20 @@ public class RESTMusicService implements MusicService {
      */
     private static final String VERSION_URL = "http://subsonic.org/backend/version.view";
 
-    private static final int HTTP_REQUEST_MAX_ATTEMPTS = 5;
     private static final long REDIRECTION_CHECK_INTERVAL_MILLIS = 60L * 60L * 1000L;
+	// How long to keep idle connections around when the server doesn't say
+	private static final long KEEP_ALIVE_DEFAULT_MILLIS = 30L * 1000L;
+	private static final int CONNECTION_STATS_INTERVAL = 50;
+	private static final int OFFLINE_SYNC_THREADS = 4;
+	private static final int OFFLINE_SYNC_BATCH_SIZE = 50;
+	private static final String VALIDATORS_FILE = "validators.ser";
+	private static final int MAX_VALIDATORS = 500;
+	// Bodies bigger than this are parsed as they come in instead of being hashed first
+	private static final int MAX_VALIDATED_BUFFER = 256 * 1024;
+	private static final long INDEXES_REVALIDATE_MILLIS = 24L * 60L * 60L * 1000L;
+	private static final int VALIDATOR_ETAG = 0;
+	private static final int VALIDATOR_LAST_MODIFIED = 1;
+	private static final int VALIDATOR_HASH = 2;
 
     private final DefaultHttpClient httpClient;
     private long redirectionLastChecked;
@@ -130,6 +165,29 @@ public class RESTMusicService implements MusicService {
     private String redirectTo;
     private final ThreadSafeClientConnManager connManager;
 	private Integer instance;
+	private int networkTimeout;
+	private String credentialsKey;
+	private final AtomicInteger requestCount = new AtomicInteger();
+	private final AtomicInteger connectionCount = new AtomicInteger();
+	private BroadcastReceiver networkReceiver;
+	private boolean networkReceiverRegistered = false;
+	private int prewarmNetworkType = -1;
+	private SSLSocketFactory sslSocketFactory;
+	private RetryPolicy retryPolicy = new RetryPolicy();
+	private final SingleFlight<MusicDirectory> directoryRequests = new SingleFlight<MusicDirectory>(new SingleFlight.Copier<MusicDirectory>() {
+		@Override
+		public MusicDirectory copy(MusicDirectory value) {
+			return FileUtil.copy(value, MusicDirectory.class);
+		}
+	});
+	private final SingleFlight<byte[]> coverArtRequests = new SingleFlight<byte[]>(new SingleFlight.Copier<byte[]>() {
+		@Override
+		public byte[] copy(byte[] value) {
+			return value.clone();
+		}
+	});
+	private final Object validatorsLock = new Object();
+	private LinkedHashMap<String, String[]> validators;
 
     public RESTMusicService() {
 
@@ -146,19 +204,27 @@ public class RESTMusicService implements MusicService {
 
         // Create and initialize scheme registry
         SchemeRegistry schemeRegistry = new SchemeRegistry();
-        schemeRegistry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
-        schemeRegistry.register(new Scheme("https", createSSLSocketFactory(), 443));
+        schemeRegistry.register(new Scheme("http", new CountingSocketFactory(PlainSocketFactory.getSocketFactory()), 80));
+        schemeRegistry.register(new Scheme("https", new CountingLayeredSocketFactory(createSSLSocketFactory()), 443));
 
         // Create an HttpClient with the ThreadSafeClientConnManager.
         // This connection manager must be used if more than one thread will
         // be using the HttpClient.
         connManager = new ThreadSafeClientConnManager(params, schemeRegistry);
         httpClient = new DefaultHttpClient(connManager, params);
+		httpClient.setKeepAliveStrategy(new DefaultConnectionKeepAliveStrategy() {
+			@Override
+			public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+				long duration = super.getKeepAliveDuration(response, context);
+				return duration > 0 ? duration : KEEP_ALIVE_DEFAULT_MILLIS;
+			}
+		});
     }
 
-    private SocketFactory createSSLSocketFactory() {
+    private LayeredSocketFactory createSSLSocketFactory() {
         try {
-            return new SSLSocketFactory(new TrustSelfSignedStrategy(), SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
+            sslSocketFactory = new SSLSocketFactory(new TrustSelfSignedStrategy(), SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
+            return sslSocketFactory;
         } catch (Throwable x) {
             Log.e(TAG, "Failed to create custom SSL socket factory, using default.", x);
             return org.apache.http.conn.ssl.SSLSocketFactory.getSocketFactory();
@@ -200,7 +266,22 @@ public class RESTMusicService implements MusicService {
     public Indexes getIndexes(String musicFolderId, boolean refresh, Context context, ProgressListener progressListener) throws Exception {
         Indexes cachedIndexes = readCachedIndexes(context, musicFolderId);
         if (cachedIndexes != null && !refresh) {
-            return cachedIndexes;
+			File cachedFile = new File(context.getCacheDir(), getCachedIndexesFilename(context, musicFolderId));
+			if((System.currentTimeMillis() - cachedFile.lastModified()) < INDEXES_REVALIDATE_MILLIS || cachedIndexes.getLastModified() == 0L) {
+				return cachedIndexes;
+			}
+
+			// Old enough to check, the server will leave the indexes out if nothing changed since they were cached
+			try {
+				Indexes indexes = getIndexes(musicFolderId, cachedIndexes.getLastModified(), context, progressListener);
+				if(indexes != null) {
+					return indexes;
+				}
+				cachedFile.setLastModified(System.currentTimeMillis());
+			} catch(Exception e) {
+				Log.w(TAG, "Failed to revalidate cached indexes", e);
+			}
+			return cachedIndexes;
         }
 
 		// If manual refresh, try to start server scan for madsonic servers
@@ -215,8 +296,16 @@ public class RESTMusicService implements MusicService {
 			}
 		}*/
 
-        long lastModified = (cachedIndexes == null || refresh) ? 0L : cachedIndexes.getLastModified();
+		// Nothing cached or a manual refresh, so always get the whole thing
+		Indexes indexes = getIndexes(musicFolderId, 0L, context, progressListener);
+		if(indexes != null) {
+			return indexes;
+		} else {
+			return new Indexes(0, new ArrayList<Artist>(), new ArrayList<Artist>());
+		}
+	}
 
+	private Indexes getIndexes(String musicFolderId, long lastModified, Context context, ProgressListener progressListener) throws Exception {
         List<String> parameterNames = new ArrayList<String>();
         List<Object> parameterValues = new ArrayList<Object>();
 
@@ -235,13 +324,8 @@ public class RESTMusicService implements MusicService {
             Indexes indexes = new IndexesParser(context).parse(reader, progressListener);
             if (indexes != null) {
                 writeCachedIndexes(context, indexes, musicFolderId);
-                return indexes;
             }
-			if(cachedIndexes != null) {
-				return cachedIndexes;
-			} else {
-				return new Indexes(0, new ArrayList<Artist>(), new ArrayList<Artist>());
-			}
+			return indexes;
         } finally {
             Util.close(reader);
         }
@@ -263,7 +347,17 @@ public class RESTMusicService implements MusicService {
     }
 
     @Override
-    public MusicDirectory getMusicDirectory(String id, String name, boolean refresh, Context context, ProgressListener progressListener) throws Exception {
+    public MusicDirectory getMusicDirectory(final String id, final String name, boolean refresh, final Context context, final ProgressListener progressListener) throws Exception {
+		final String cacheName = refresh ? null : getCacheName(context, "directory", id);
+		return directoryRequests.execute(getInstance(context) + ":getMusicDirectory:" + id + ":" + name + ":" + refresh, new Callable<MusicDirectory>() {
+			@Override
+			public MusicDirectory call() throws Exception {
+				return getMusicDirectoryImpl(id, name, cacheName, context, progressListener);
+			}
+		});
+	}
+
+	private MusicDirectory getMusicDirectoryImpl(String id, String name, String cacheName, Context context, ProgressListener progressListener) throws Exception {
 		SharedPreferences prefs = Util.getPreferences(context);
 		String cacheLocn = prefs.getString(Constants.PREFERENCES_KEY_CACHE_LOCATION, null);
 		if(id.indexOf(cacheLocn) != -1) {
@@ -277,32 +371,35 @@ public class RESTMusicService implements MusicService {
 			}
 		}
 		
-        Reader reader = getReader(context, progressListener, "getMusicDirectory", null, "id", id);
-        try {
-            return new MusicDirectoryParser(context).parse(name, reader, progressListener);
-        } finally {
-            Util.close(reader);
-        }
+		return getDirectoryValidated("getMusicDirectory", id, name, cacheName, context, progressListener);
     }
 
 	@Override
 	public MusicDirectory getArtist(String id, String name, boolean refresh, Context context, ProgressListener progressListener) throws Exception {
-		Reader reader = getReader(context, progressListener, "getArtist", null, "id", id);
-		try {
-			return new MusicDirectoryParser(context).parse(name, reader, progressListener);
-		} finally {
-			Util.close(reader);
-		}
+		return getDirectoryFromMethod("getArtist", id, name, refresh ? null : getCacheName(context, "artist", id), context, progressListener);
 	}
 
 	@Override
 	public MusicDirectory getAlbum(String id, String name, boolean refresh, Context context, ProgressListener progressListener) throws Exception {
-		Reader reader = getReader(context, progressListener, "getAlbum", null, "id", id);
-		try {
-			return new MusicDirectoryParser(context).parse(name, reader, progressListener);
-		} finally {
-			Util.close(reader);
-		}
+		return getDirectoryFromMethod("getAlbum", id, name, refresh ? null : getCacheName(context, "album", id), context, progressListener);
+	}
+
+	private MusicDirectory getDirectoryFromMethod(final String method, final String id, final String name, final String cacheName, final Context context, final ProgressListener progressListener) throws Exception {
+		return directoryRequests.execute(getInstance(context) + ":" + method + ":" + id + ":" + name + ":" + (cacheName == null), new Callable<MusicDirectory>() {
+			@Override
+			public MusicDirectory call() throws Exception {
+				return getDirectoryValidated(method, id, name, cacheName, context, progressListener);
+			}
+		});
+	}
+
+	private MusicDirectory getDirectoryValidated(String method, String id, final String name, String cacheName, final Context context, final ProgressListener progressListener) throws Exception {
+		return getValidated(context, progressListener, method, null, "id", id, cacheName, MusicDirectory.class, new ResponseParser<MusicDirectory>() {
+			@Override
+			public MusicDirectory parse(Reader reader) throws Exception {
+				return new MusicDirectoryParser(context).parse(name, reader, progressListener);
+			}
+		});
 	}
 
 	@Override
@@ -347,16 +444,23 @@ public class RESTMusicService implements MusicService {
     }
 
     @Override
-    public MusicDirectory getPlaylist(boolean refresh, String id, String name, Context context, ProgressListener progressListener) throws Exception {
-        HttpParams params = new BasicHttpParams();
-        HttpConnectionParams.setSoTimeout(params, SOCKET_READ_TIMEOUT_GET_PLAYLIST);
-
-        Reader reader = getReader(context, progressListener, "getPlaylist", params, "id", id);
-        try {
-			return new PlaylistParser(context).parse(reader, progressListener);
-        } finally {
-            Util.close(reader);
-        }
+    public MusicDirectory getPlaylist(boolean refresh, final String id, String name, final Context context, final ProgressListener progressListener) throws Exception {
+		final String cacheName = refresh ? null : getCacheName(context, "playlist", id);
+		// name isn't part of the key since PlaylistParser takes the name from the response
+		return directoryRequests.execute(getInstance(context) + ":getPlaylist:" + id + ":" + refresh, new Callable<MusicDirectory>() {
+			@Override
+			public MusicDirectory call() throws Exception {
+				HttpParams params = new BasicHttpParams();
+				HttpConnectionParams.setSoTimeout(params, SOCKET_READ_TIMEOUT_GET_PLAYLIST);
+
+				return getValidated(context, progressListener, "getPlaylist", params, "id", id, cacheName, MusicDirectory.class, new ResponseParser<MusicDirectory>() {
+					@Override
+					public MusicDirectory parse(Reader reader) throws Exception {
+						return new PlaylistParser(context).parse(reader, progressListener);
+					}
+				});
+			}
+		});
     }
 
     @Override
@@ -641,66 +745,108 @@ public class RESTMusicService implements MusicService {
 	}
 
     @Override
-    public Bitmap getCoverArt(Context context, MusicDirectory.Entry entry, int size, ProgressListener progressListener) throws Exception {
+    public Bitmap getCoverArt(final Context context, final MusicDirectory.Entry entry, int size, final ProgressListener progressListener) throws Exception {
+		// Use cached file, if existing.
+		Bitmap bitmap = FileUtil.getAlbumArtBitmap(context, entry, size);
+		if (bitmap != null) {
+			return bitmap;
+		}
 
-        // Synchronize on the entry so that we don't download concurrently for the same song.
-        synchronized (entry) {
+		// Anything smaller than the screen is scaled by the server, only the now playing art needs the original
+		DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+		final int requestSize = size < Math.min(metrics.widthPixels, metrics.heightPixels) ? size : 0;
+		File albumArtFile = FileUtil.getAlbumArtFile(context, entry);
+		final File file = requestSize > 0 ? FileUtil.getScaledAlbumArtFile(context, entry, requestSize) : albumArtFile;
+
+		// Share the download with anyone else asking for the same cover art, each caller then samples it to their own size
+		byte[] bytes = coverArtRequests.execute(file.getPath(), new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws Exception {
+				return getCoverArtBytes(context, entry, requestSize, file, progressListener);
+			}
+		});
+		return FileUtil.getSampledBitmap(bytes, size);
+	}
 
-            // Use cached file, if existing.
-            Bitmap bitmap = FileUtil.getAlbumArtBitmap(context, entry, size);
-            if (bitmap != null) {
-                return bitmap;
+	private byte[] getCoverArtBytes(Context context, MusicDirectory.Entry entry, int size, File albumArtFile, ProgressListener progressListener) throws Exception {
+        String url = getRestUrl(context, "getCoverArt");
+
+        InputStream in = null;
+        try {
+            List<String> parameterNames;
+            List<Object> parameterValues;
+            if(size > 0) {
+                parameterNames = Arrays.asList("id", "size");
+                parameterValues = Arrays.<Object>asList(entry.getCoverArt(), size);
+            } else {
+                parameterNames = Arrays.asList("id");
+                parameterValues = Arrays.<Object>asList(entry.getCoverArt());
             }
+            HttpEntity entity = getEntityForURL(context, url, null, parameterNames, parameterValues, progressListener);
+            in = entity.getContent();
 
-            String url = getRestUrl(context, "getCoverArt");
+            // If content type is XML, an error occured.  Get it.
+            String contentType = Util.getContentType(entity);
+            if (contentType != null && contentType.startsWith("text/xml")) {
+                new ErrorParser(context).parse(new InputStreamReader(in, Constants.UTF_8));
+                return null; // Never reached.
+            }
 
-            InputStream in = null;
-            try {
-                List<String> parameterNames = Arrays.asList("id");
-                List<Object> parameterValues = Arrays.<Object>asList(entry.getCoverArt());
-                HttpEntity entity = getEntityForURL(context, url, null, parameterNames, parameterValues, progressListener);
-                in = entity.getContent();
-
-                // If content type is XML, an error occured.  Get it.
-                String contentType = Util.getContentType(entity);
-                if (contentType != null && contentType.startsWith("text/xml")) {
-                    new ErrorParser(context).parse(new InputStreamReader(in, Constants.UTF_8));
-                    return null; // Never reached.
-                }
+            byte[] bytes = Util.toByteArray(in);
+			// Written next to it and moved into place, so a failed write never leaves a cut off image to be decoded from then on
+			File tmp = new File(albumArtFile.getPath() + ".tmp");
+			OutputStream out = null;
+			try {
+				out = new FileOutputStream(tmp);
+				out.write(bytes);
+				out.close();
+				out = null;
 
-                byte[] bytes = Util.toByteArray(in);
-				OutputStream out = null;
-				try {
-					out = new FileOutputStream(FileUtil.getAlbumArtFile(context, entry));
-					out.write(bytes);
-				} finally {
-					Util.close(out);
+				if(!tmp.renameTo(albumArtFile)) {
+					throw new IOException("Failed to rename " + tmp + " to " + albumArtFile);
 				}
+			} catch(IOException e) {
+				Log.w(TAG, "Failed to save cover art", e);
+				tmp.delete();
+			} finally {
+				Util.close(out);
+			}
 
-                return FileUtil.getSampledBitmap(bytes, size);
-            } finally {
-                Util.close(in);
-            }
+            return bytes;
+        } finally {
+            Util.close(in);
         }
     }
 
     @Override
     public HttpResponse getDownloadInputStream(Context context, MusicDirectory.Entry song, long offset, int maxBitrate, SilentBackgroundTask task) throws Exception {
-
-        String url = getRestUrl(context, "stream");
-
         // Set socket read timeout. Note: The timeout increases as the offset gets larger. This is
         // to avoid the thrashing effect seen when offset is combined with transcoding/downsampling on the server.
         // In that case, the server uses a long time before sending any data, causing the client to time out.
-        HttpParams params = new BasicHttpParams();
         int timeout = (int) (SOCKET_READ_TIMEOUT_DOWNLOAD + offset * TIMEOUT_MILLIS_PER_OFFSET_BYTE);
-        HttpConnectionParams.setSoTimeout(params, timeout);
 
         // Add "Range" header if offset is given.
         List<Header> headers = new ArrayList<Header>();
         if (offset > 0) {
             headers.add(new BasicHeader("Range", "bytes=" + offset + "-"));
         }
+        return getDownloadInputStream(context, song, maxBitrate, timeout, headers, task);
+    }
+
+	@Override
+	public HttpResponse getDownloadRangeInputStream(Context context, MusicDirectory.Entry song, long start, long end, int maxBitrate) throws Exception {
+		// Only used for raw files, so the server has nothing to transcode before it starts sending
+		List<Header> headers = new ArrayList<Header>();
+		headers.add(new BasicHeader("Range", "bytes=" + start + "-" + (end - 1)));
+		return getDownloadInputStream(context, song, maxBitrate, SOCKET_READ_TIMEOUT_DOWNLOAD, headers, null);
+	}
+
+	private HttpResponse getDownloadInputStream(Context context, MusicDirectory.Entry song, int maxBitrate, int timeout, List<Header> headers, SilentBackgroundTask task) throws Exception {
+        String url = getRestUrl(context, "stream");
+
+        HttpParams params = new BasicHttpParams();
+        HttpConnectionParams.setSoTimeout(params, timeout);
+
         List<String> parameterNames = Arrays.asList("id", "maxBitRate");
         List<Object> parameterValues = Arrays.<Object>asList(song.getId(), maxBitrate);
         HttpResponse response = getResponseForURL(context, url, params, parameterNames, parameterValues, headers, null, task);
@@ -1190,79 +1336,149 @@ public class RESTMusicService implements MusicService {
 	}
 	
 	public int processOfflineScrobbles(final Context context, final ProgressListener progressListener) throws Exception {
-		SharedPreferences offline = Util.getOfflineSync(context);
-		SharedPreferences.Editor offlineEditor = offline.edit();
-		int count = offline.getInt(Constants.OFFLINE_SCROBBLE_COUNT, 0);
-		int retry = 0;
-		for(int i = 1; i <= count; i++) {
-			String id = offline.getString(Constants.OFFLINE_SCROBBLE_ID + i, null);
-			long time = offline.getLong(Constants.OFFLINE_SCROBBLE_TIME + i, 0);
-			if(id != null) {
-				scrobble(id, true, time, context, progressListener);
-			} else {
-				String search = offline.getString(Constants.OFFLINE_SCROBBLE_SEARCH + i, "");
-				try{
-					SearchCritera critera = new SearchCritera(search, 0, 0, 1);
-					SearchResult result = searchNew(critera, context, progressListener);
-					if(result.getSongs().size() == 1){
-						Log.i(TAG, "Query '" + search + "' returned song " + result.getSongs().get(0).getTitle() + " by " + result.getSongs().get(0).getArtist() + " with id " + result.getSongs().get(0).getId());
-						Log.i(TAG, "Scrobbling " + result.getSongs().get(0).getId() + " with time " + time);
-						scrobble(result.getSongs().get(0).getId(), true, time, context, progressListener);
+		OfflineJournal journal = OfflineJournal.getInstance(context);
+		List<OfflineJournal.Entry> entries = journal.getScrobbles();
+		List<OfflineJournal.Entry> completed = new ArrayList<OfflineJournal.Entry>();
+		List<OfflineJournal.Entry> dropped = new ArrayList<OfflineJournal.Entry>();
+
+		// Scrobbles carry their own time so there is no need to send them one after another
+		ExecutorService executor = Executors.newFixedThreadPool(OFFLINE_SYNC_THREADS);
+		try {
+			List<Future<?>> scrobbles = new ArrayList<Future<?>>(entries.size());
+			for(final OfflineJournal.Entry entry: entries) {
+				scrobbles.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						String id = entry.getId() != null ? entry.getId() : getOfflineSearchId(entry.getSearch(), false, context, progressListener);
+						Log.i(TAG, "Scrobbling " + id + " with time " + entry.getTime());
+						scrobble(id, true, entry.getTime(), context, progressListener);
+						return null;
 					}
-					else{
-						throw new Exception("Song not found on server");
+				}));
+			}
+
+			for(int i = 0; i < entries.size(); i++) {
+				try {
+					scrobbles.get(i).get();
+					completed.add(entries.get(i));
+				} catch(ExecutionException e) {
+					if(e.getCause() instanceof OfflineNotFoundException) {
+						Log.w(TAG, "Dropping scrobble for " + entries.get(i).getSearch() + ": " + e.getCause().getMessage());
+						dropped.add(entries.get(i));
+					} else {
+						Log.e(TAG, e.getCause().toString());
 					}
 				}
-				catch(Exception e){
-					Log.e(TAG, e.toString());
-					retry++;
-				}
 			}
+		} finally {
+			executor.shutdownNow();
+			completeOffline(journal, completed, dropped);
 		}
 
-		offlineEditor.putInt(Constants.OFFLINE_SCROBBLE_COUNT, 0);
-		offlineEditor.commit();
-
-		return count - retry;
+		return completed.size();
 	}
 	
 	public int processOfflineStars(final Context context, final ProgressListener progressListener) throws Exception {
-		SharedPreferences offline = Util.getOfflineSync(context);
-		SharedPreferences.Editor offlineEditor = offline.edit();
-		int count = offline.getInt(Constants.OFFLINE_STAR_COUNT, 0);
-		int retry = 0;
-		for(int i = 1; i <= count; i++) {
-			String id = offline.getString(Constants.OFFLINE_STAR_ID + i, null);
-			boolean starred = offline.getBoolean(Constants.OFFLINE_STAR_SETTING + i, false);
-			if(id != null) {
-				setStarred(Arrays.asList(id), null, null, starred, context, progressListener);
-			} else {
-				String search = offline.getString(Constants.OFFLINE_STAR_SEARCH + i, "");
-				try{
-					SearchCritera critera = new SearchCritera(search, 0, 1, 1);
-					SearchResult result = searchNew(critera, context, progressListener);
-					if(result.getSongs().size() == 1){
-						Log.i(TAG, "Query '" + search + "' returned song " + result.getSongs().get(0).getTitle() + " by " + result.getSongs().get(0).getArtist() + " with id " + result.getSongs().get(0).getId());
-						setStarred(Arrays.asList(result.getSongs().get(0).getId()), null, null, starred, context, progressListener);
-					} else if(result.getAlbums().size() == 1){
-						Log.i(TAG, "Query '" + search + "' returned song " + result.getAlbums().get(0).getTitle() + " by " + result.getAlbums().get(0).getArtist() + " with id " + result.getAlbums().get(0).getId());
-						setStarred(Arrays.asList(result.getAlbums().get(0).getId()), null, null, starred, context, progressListener);
+		OfflineJournal journal = OfflineJournal.getInstance(context);
+		List<OfflineJournal.Entry> entries = journal.getStars();
+		List<OfflineJournal.Entry> completed = new ArrayList<OfflineJournal.Entry>();
+		List<OfflineJournal.Entry> dropped = new ArrayList<OfflineJournal.Entry>();
+
+		// Look up everything that needs a search at once, then only send the last setting for each id
+		Map<String, Boolean> settings = new LinkedHashMap<String, Boolean>();
+		Map<String, List<OfflineJournal.Entry>> entriesById = new HashMap<String, List<OfflineJournal.Entry>>();
+		ExecutorService executor = Executors.newFixedThreadPool(OFFLINE_SYNC_THREADS);
+		try {
+			List<Future<String>> ids = new ArrayList<Future<String>>(entries.size());
+			for(final OfflineJournal.Entry entry: entries) {
+				ids.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						return entry.getId() != null ? entry.getId() : getOfflineSearchId(entry.getSearch(), true, context, progressListener);
 					}
-					else{
-						throw new Exception("Song not found on server");
+				}));
+			}
+
+			for(int i = 0; i < entries.size(); i++) {
+				OfflineJournal.Entry entry = entries.get(i);
+				try {
+					String id = ids.get(i).get();
+					settings.remove(id);
+					settings.put(id, entry.isStarred());
+
+					List<OfflineJournal.Entry> idEntries = entriesById.get(id);
+					if(idEntries == null) {
+						idEntries = new ArrayList<OfflineJournal.Entry>();
+						entriesById.put(id, idEntries);
 					}
+					idEntries.add(entry);
+				} catch(ExecutionException e) {
+					if(e.getCause() instanceof OfflineNotFoundException) {
+						Log.w(TAG, "Dropping star for " + entry.getSearch() + ": " + e.getCause().getMessage());
+						dropped.add(entry);
+					} else {
+						Log.e(TAG, e.getCause().toString());
+					}
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		List<String> star = new ArrayList<String>();
+		List<String> unstar = new ArrayList<String>();
+		for(Map.Entry<String, Boolean> setting: settings.entrySet()) {
+			(setting.getValue() ? star : unstar).add(setting.getKey());
+		}
+		try {
+			for(int i = 0; i < star.size(); i += OFFLINE_SYNC_BATCH_SIZE) {
+				List<String> batch = star.subList(i, Math.min(star.size(), i + OFFLINE_SYNC_BATCH_SIZE));
+				setStarred(batch, null, null, true, context, progressListener);
+				for(String id: batch) {
+					completed.addAll(entriesById.get(id));
 				}
-				catch(Exception e){
-					Log.e(TAG, e.toString());
-					retry++;
+			}
+			for(int i = 0; i < unstar.size(); i += OFFLINE_SYNC_BATCH_SIZE) {
+				List<String> batch = unstar.subList(i, Math.min(unstar.size(), i + OFFLINE_SYNC_BATCH_SIZE));
+				setStarred(batch, null, null, false, context, progressListener);
+				for(String id: batch) {
+					completed.addAll(entriesById.get(id));
 				}
 			}
+		} finally {
+			completeOffline(journal, completed, dropped);
 		}
 
-		offlineEditor.putInt(Constants.OFFLINE_STAR_COUNT, 0);
-		offlineEditor.commit();
+		return completed.size();
+	}
+
+	private void completeOffline(OfflineJournal journal, List<OfflineJournal.Entry> completed, List<OfflineJournal.Entry> dropped) {
+		// Entries the server can never resolve are finished too, otherwise they come back on every sync
+		List<OfflineJournal.Entry> finished = new ArrayList<OfflineJournal.Entry>(completed.size() + dropped.size());
+		finished.addAll(completed);
+		finished.addAll(dropped);
+		journal.complete(finished);
+	}
+
+	private String getOfflineSearchId(String search, boolean allowAlbums, Context context, ProgressListener progressListener) throws Exception {
+		SearchCritera critera = new SearchCritera(search, 0, allowAlbums ? 1 : 0, 1);
+		SearchResult result = searchNew(critera, context, progressListener);
+		if(result.getSongs().size() == 1){
+			Log.i(TAG, "Query '" + search + "' returned song " + result.getSongs().get(0).getTitle() + " by " + result.getSongs().get(0).getArtist() + " with id " + result.getSongs().get(0).getId());
+			return result.getSongs().get(0).getId();
+		} else if(allowAlbums && result.getAlbums().size() == 1){
+			Log.i(TAG, "Query '" + search + "' returned song " + result.getAlbums().get(0).getTitle() + " by " + result.getAlbums().get(0).getArtist() + " with id " + result.getAlbums().get(0).getId());
+			return result.getAlbums().get(0).getId();
+		}
+		else{
+			throw new OfflineNotFoundException("Song not found on server");
+		}
+	}
 
-		return count - retry;
+	private static class OfflineNotFoundException extends Exception {
+		public OfflineNotFoundException(String message) {
+			super(message);
+		}
 	}
 	
 	private String getOfflineSongId(String id, Context context, ProgressListener progressListener) throws Exception {
@@ -1320,6 +1536,146 @@ public class RESTMusicService implements MusicService {
         return new InputStreamReader(in, Constants.UTF_8);
     }
 
+	/**
+	 * Gets a response whose parsed result the caller keeps in the cache file cacheName.  The server is asked to skip sending it if it has not changed,
+	 * and since Subsonic rarely sends validators, the body is also hashed so an identical response is loaded from the cache file instead of parsed again.
+	 * A null cacheName skips all of this and always gets the whole response.
+	 */
+	private <T extends Serializable> T getValidated(Context context, ProgressListener progressListener, String method, HttpParams requestParams,
+							   String parameterName, Object parameterValue, String cacheName, Class<T> type, ResponseParser<T> parser) throws Exception {
+		if (progressListener != null) {
+			progressListener.updateProgress(R.string.service_connecting);
+		}
+
+		String url = getRestUrl(context, method);
+		// Nothing to fall back on without the cache file
+		String[] validator = null;
+		if(cacheName != null && new File(context.getCacheDir(), cacheName).exists()) {
+			validator = getValidator(context, cacheName);
+		}
+
+		List<Header> headers = null;
+		if(validator != null) {
+			headers = new ArrayList<Header>();
+			if(validator[VALIDATOR_ETAG] != null) {
+				headers.add(new BasicHeader("If-None-Match", validator[VALIDATOR_ETAG]));
+			}
+			if(validator[VALIDATOR_LAST_MODIFIED] != null) {
+				headers.add(new BasicHeader("If-Modified-Since", validator[VALIDATOR_LAST_MODIFIED]));
+			}
+		}
+
+		HttpResponse response = getResponseForURL(context, url, requestParams, Arrays.asList(parameterName), Arrays.<Object>asList(parameterValue), headers, progressListener, null);
+		HttpEntity entity = response.getEntity();
+		if(validator != null && response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+			if(entity != null) {
+				entity.consumeContent();
+			}
+
+			T cached = FileUtil.deserialize(context, cacheName, type);
+			if(cached != null) {
+				Log.d(TAG, method + " not modified, using cached copy");
+				return cached;
+			}
+
+			// Lost the cached copy, ask for the whole thing again
+			putValidator(context, cacheName, null);
+			return getValidated(context, progressListener, method, requestParams, parameterName, parameterValue, cacheName, type, parser);
+		}
+		if (entity == null) {
+			throw new RuntimeException("No entity received for URL " + url);
+		}
+
+		T result;
+		String hash = null;
+		InputStream in = entity.getContent();
+		try {
+			Header contentEncoding = entity.getContentEncoding();
+			if (contentEncoding != null && contentEncoding.getValue().equalsIgnoreCase("gzip")) {
+				in = new GZIPInputStream(in);
+			}
+
+			// Only hold on to small bodies, anything bigger is parsed straight from the connection without a hash
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			byte[] chunk = new byte[8192];
+			boolean complete = false;
+			while(buffer.size() < MAX_VALIDATED_BUFFER) {
+				int n = in.read(chunk);
+				if(n == -1) {
+					complete = true;
+					break;
+				}
+				buffer.write(chunk, 0, n);
+			}
+
+			if(complete) {
+				byte[] body = buffer.toByteArray();
+				hash = Util.hexEncode(MessageDigest.getInstance("MD5").digest(body));
+				if(validator != null && hash.equals(validator[VALIDATOR_HASH])) {
+					T cached = FileUtil.deserialize(context, cacheName, type);
+					if(cached != null) {
+						Log.d(TAG, method + " returned the same content, using cached copy");
+						return cached;
+					}
+				}
+
+				result = parser.parse(new InputStreamReader(new ByteArrayInputStream(body), Constants.UTF_8));
+			} else {
+				result = parser.parse(new InputStreamReader(new SequenceInputStream(new ByteArrayInputStream(buffer.toByteArray()), in), Constants.UTF_8));
+			}
+		} finally {
+			Util.close(in);
+		}
+
+		if(cacheName != null) {
+			Header etag = response.getFirstHeader("ETag");
+			Header lastModified = response.getFirstHeader("Last-Modified");
+			if(etag != null || lastModified != null || hash != null) {
+				String[] newValidator = new String[]{etag == null ? null : etag.getValue(), lastModified == null ? null : lastModified.getValue(), hash};
+				if(validator == null || !Arrays.equals(validator, newValidator)) {
+					putValidator(context, cacheName, newValidator);
+				}
+			} else if(validator != null) {
+				putValidator(context, cacheName, null);
+			}
+		}
+		return result;
+	}
+
+	private String[] getValidator(Context context, String cacheName) {
+		synchronized (validatorsLock) {
+			if(validators == null) {
+				// Least recently used first, so the oldest are the ones dropped once there are too many
+				validators = new LinkedHashMap<String, String[]>(16, 0.75f, true) {
+					@Override
+					protected boolean removeEldestEntry(Map.Entry<String, String[]> eldest) {
+						return size() > MAX_VALIDATORS;
+					}
+				};
+				LinkedHashMap<String, String[]> saved = FileUtil.deserialize(context, VALIDATORS_FILE, LinkedHashMap.class);
+				if(saved != null) {
+					validators.putAll(saved);
+				}
+			}
+			return validators.get(cacheName);
+		}
+	}
+
+	private void putValidator(Context context, String cacheName, String[] validator) {
+		synchronized (validatorsLock) {
+			getValidator(context, cacheName);
+			if(validator == null) {
+				if(validators.remove(cacheName) == null) {
+					return;
+				}
+			} else {
+				validators.put(cacheName, validator);
+			}
+			// Only written when a validator changes, not every time one is used
+			FileUtil.serialize(context, new LinkedHashMap<String, String[]>(validators), VALIDATORS_FILE);
+		}
+	}
+
     private HttpEntity getEntityForURL(Context context, String url, HttpParams requestParams, List<String> parameterNames,
                                        List<Object> parameterValues, ProgressListener progressListener) throws Exception {
         return getResponseForURL(context, url, requestParams, parameterNames, parameterValues, null, progressListener, null).getEntity();
@@ -1353,23 +1709,27 @@ public class RESTMusicService implements MusicService {
         Log.i(TAG, stripUrlInfo(url));
 
 		SharedPreferences prefs = Util.getPreferences(context);
-		int networkTimeout = Integer.parseInt(prefs.getString(Constants.PREFERENCES_KEY_NETWORK_TIMEOUT, "15000"));
-		HttpParams newParams = httpClient.getParams();
-		HttpConnectionParams.setSoTimeout(newParams, networkTimeout);
-		httpClient.setParams(newParams);
+		updateClientSettings(prefs);
 
         final AtomicReference<Boolean> cancelled = new AtomicReference<Boolean>(false);
+		String method = getMethodName(url);
         int attempts = 0;
         while (true) {
             attempts++;
             HttpContext httpContext = new BasicHttpContext();
             final HttpPost request = new HttpPost(url);
+			String host = request.getURI().getHost();
+			if(attempts == 1) {
+				// Retries of a request already let through keep going, that may be the one testing the host
+				retryPolicy.checkHost(host);
+			}
 
             if (task != null) {
                 // Attempt to abort the HTTP request if the task is cancelled.
                 task.setOnCancelListener(new SilentBackgroundTask.OnCancelListener() {
                     @Override
                     public void onCancel() {
+						cancelled.set(true);
 						try {
 							request.abort();
 						} catch(Exception e) {
@@ -1399,33 +1759,152 @@ public class RESTMusicService implements MusicService {
             }
 			request.addHeader("Accept-Encoding", "gzip");
 
-            // Set credentials to get through apache proxies that require authentication.
-            int instance = prefs.getInt(Constants.PREFERENCES_KEY_SERVER_INSTANCE, 1);
-            String username = prefs.getString(Constants.PREFERENCES_KEY_USERNAME + instance, null);
-            String password = prefs.getString(Constants.PREFERENCES_KEY_PASSWORD + instance, null);
-            httpClient.getCredentialsProvider().setCredentials(new AuthScope(AuthScope.ANY_HOST, AuthScope.ANY_PORT),
-                    new UsernamePasswordCredentials(username, password));
-
             try {
+				// Stale checking is off, so don't hand out connections the server has already given up on
+				connManager.closeExpiredConnections();
                 HttpResponse response = httpClient.execute(request, httpContext);
                 detectRedirect(originalUrl, context, httpContext);
+				logConnectionStats();
+				retryPolicy.onSuccess(host);
                 return response;
             } catch (IOException x) {
                 request.abort();
-                if (attempts >= HTTP_REQUEST_MAX_ATTEMPTS || cancelled.get()) {
+                if (cancelled.get() || x instanceof InterruptedIOException || Thread.currentThread().isInterrupted()) {
+					// Says nothing about the server, so don't count it against the host
+					retryPolicy.onCancel(host);
+					throw x;
+				}
+                if (!retryPolicy.shouldRetry(method, attempts, x)) {
+					retryPolicy.onFailure(host);
                     throw x;
                 }
                 if (progressListener != null) {
-                    String msg = context.getResources().getString(R.string.music_service_retry, attempts, HTTP_REQUEST_MAX_ATTEMPTS - 1);
+                    String msg = context.getResources().getString(R.string.music_service_retry, attempts, retryPolicy.getMaxAttempts() - 1);
                     progressListener.updateProgress(msg);
                 }
                 Log.w(TAG, "Got IOException (" + attempts + "), will retry", x);
                 increaseTimeouts(requestParams);
-				Thread.sleep(2000L);
+				Thread.sleep(retryPolicy.getDelayMillis(attempts));
             }
         }
     }
 
+	private synchronized void updateClientSettings(SharedPreferences prefs) {
+		// Only touch the shared client when something actually changed instead of on every request
+		int newNetworkTimeout = Integer.parseInt(prefs.getString(Constants.PREFERENCES_KEY_NETWORK_TIMEOUT, "15000"));
+		if(newNetworkTimeout != networkTimeout) {
+			HttpParams newParams = httpClient.getParams();
+			HttpConnectionParams.setSoTimeout(newParams, newNetworkTimeout);
+			httpClient.setParams(newParams);
+			networkTimeout = newNetworkTimeout;
+		}
+
+		// Set credentials to get through apache proxies that require authentication.
+		int instance = prefs.getInt(Constants.PREFERENCES_KEY_SERVER_INSTANCE, 1);
+		String username = prefs.getString(Constants.PREFERENCES_KEY_USERNAME + instance, null);
+		String password = prefs.getString(Constants.PREFERENCES_KEY_PASSWORD + instance, null);
+		String newCredentialsKey = instance + ":" + username + ":" + password;
+		if(!newCredentialsKey.equals(credentialsKey)) {
+			httpClient.getCredentialsProvider().setCredentials(new AuthScope(AuthScope.ANY_HOST, AuthScope.ANY_PORT),
+					new UsernamePasswordCredentials(username, password));
+			credentialsKey = newCredentialsKey;
+		}
+	}
+
+	private void logConnectionStats() {
+		int requests = requestCount.incrementAndGet();
+		if(requests % CONNECTION_STATS_INTERVAL == 0) {
+			int connections = connectionCount.get();
+			Log.i(TAG, "Opened " + connections + " connections for " + requests + " requests, reused " + (100 - connections * 100 / requests) + "%");
+		}
+	}
+
+	/**
+	 * Opens a connection to the current server ahead of time so the first real request doesn't pay for the connect and handshake.
+	 * Called whenever the app comes to the foreground, and again whenever the network changes while it is there since the old
+	 * connections are useless after that.
+	 */
+	public synchronized void prewarm(Context context) {
+		final Context appContext = context.getApplicationContext();
+		if(networkReceiver == null) {
+			networkReceiver = new BroadcastReceiver() {
+				@Override
+				public void onReceive(Context context, Intent intent) {
+					if(isInitialStickyBroadcast()) {
+						return;
+					}
+
+					connManager.closeIdleConnections(0, TimeUnit.MILLISECONDS);
+					prewarmNetworkType = getCurrentNetworkType(appContext);
+					startPrewarm(appContext);
+				}
+			};
+
+			if(sslSocketFactory != null) {
+				sslSocketFactory.setPersistentSessionCache(appContext);
+			}
+		}
+		if(!networkReceiverRegistered) {
+			appContext.registerReceiver(networkReceiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+			networkReceiverRegistered = true;
+
+			// Changes while in the background weren't seen, so check whether the pooled connections are from another network
+			int networkType = getCurrentNetworkType(appContext);
+			if(prewarmNetworkType != -1 && networkType != prewarmNetworkType) {
+				connManager.closeIdleConnections(0, TimeUnit.MILLISECONDS);
+			}
+			prewarmNetworkType = networkType;
+		}
+
+		startPrewarm(appContext);
+	}
+
+	/**
+	 * Stops prewarming on network changes once the app goes to the background, nobody is about to make a request then
+	 */
+	public synchronized void stopPrewarm(Context context) {
+		if(networkReceiverRegistered) {
+			context.getApplicationContext().unregisterReceiver(networkReceiver);
+			networkReceiverRegistered = false;
+		}
+	}
+
+	private void startPrewarm(final Context context) {
+		// Already have something warm to reuse
+		if(connManager.getConnectionsInPool() > 0 || Util.isOffline(context) || !Util.isNetworkConnected(context)) {
+			return;
+		}
+
+		new SilentBackgroundTask<Void>(context) {
+			@Override
+			protected Void doInBackground() throws Throwable {
+				try {
+					prewarmConnection(context);
+				} catch(Exception e) {
+					Log.w(TAG, "Failed to prewarm connection", e);
+				}
+				return null;
+			}
+		}.execute();
+	}
+
+	/**
+	 * Pings without going through executeWithRetry, a failure here isn't something the user asked for so it shouldn't count against the host
+	 */
+	private void prewarmConnection(Context context) throws Exception {
+		updateClientSettings(Util.getPreferences(context));
+		HttpPost request = new HttpPost(rewriteUrlWithRedirect(context, getRestUrl(context, "ping")));
+		try {
+			HttpEntity entity = httpClient.execute(request).getEntity();
+			if(entity != null) {
+				entity.consumeContent();
+			}
+		} catch(IOException e) {
+			request.abort();
+			throw e;
+		}
+	}
+
     private void increaseTimeouts(HttpParams requestParams) {
         if (requestParams != null) {
             int connectTimeout = HttpConnectionParams.getConnectionTimeout(requestParams);
@@ -1480,6 +1959,16 @@ public class RESTMusicService implements MusicService {
         return url.replace(redirectFrom, redirectTo);
     }
 
+	private String getMethodName(String url) {
+		int start = url.indexOf("/rest/");
+		int end = url.indexOf(".view", start);
+		return (start == -1 || end == -1) ? null : url.substring(start + "/rest/".length(), end);
+	}
+
+	public void setRetryPolicy(RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+	}
+
 	private String stripUrlInfo(String url) {
 		return url.substring(0, url.indexOf("?u=") + 1) + url.substring(url.indexOf("&v=") + 1);
 	}
@@ -1507,4 +1996,47 @@ public class RESTMusicService implements MusicService {
 			return Util.getRestUrl(context, method, instance, allowAltAddress);
 		}
 	}
+	public String getCacheName(Context context, String name, String id) {
+		String s = getRestUrl(context, null, false) + id;
+		return name + "-" + s.hashCode() + ".ser";
+	}
+
+	private interface ResponseParser<T> {
+		T parse(Reader reader) throws Exception;
+	}
+
+	private class CountingSocketFactory implements SocketFactory {
+		protected final SocketFactory factory;
+
+		public CountingSocketFactory(SocketFactory factory) {
+			this.factory = factory;
+		}
+
+		@Override
+		public Socket createSocket() throws IOException {
+			return factory.createSocket();
+		}
+
+		@Override
+		public Socket connectSocket(Socket socket, String host, int port, InetAddress localAddress, int localPort, HttpParams params) throws IOException {
+			connectionCount.incrementAndGet();
+			return factory.connectSocket(socket, host, port, localAddress, localPort, params);
+		}
+
+		@Override
+		public boolean isSecure(Socket socket) {
+			return factory.isSecure(socket);
+		}
+	}
+
+	private class CountingLayeredSocketFactory extends CountingSocketFactory implements LayeredSocketFactory {
+		public CountingLayeredSocketFactory(LayeredSocketFactory factory) {
+			super(factory);
+		}
+
+		@Override
+		public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+			return ((LayeredSocketFactory) factory).createSocket(socket, host, port, autoClose);
+		}
+	}
 }
@@ -0,0 +1,182 @@
+/*
+	This file is part of Subsonic.
+
+	Subsonic is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	Subsonic is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with Subsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+	Copyright 2014 (C) Scott Jackson
+*/
+package github.daneren2005.dsub.service;
+
+import android.util.Log;
+
+import org.apache.http.conn.ConnectTimeoutException;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides whether a failed request gets another try and how long to wait first.  Waits grow exponentially with full jitter,
+ * requests that change something on the server are only retried if they never got there, and a host that keeps failing
+ * is failed fast for a while instead of tying up a background thread on every call.  Once that runs out a single request
+ * is let through to see if the host is back, and everything else keeps failing fast until it comes back.
+ */
+public class RetryPolicy {
+	private static final String TAG = RetryPolicy.class.getSimpleName();
+
+	// Calls which aren't safe to send twice if the first one might have made it to the server
+	private static final Set<String> UNSAFE_METHODS = new HashSet<String>(Arrays.asList(
+		"star", "unstar", "scrobble", "setRating", "createPlaylist", "updatePlaylist", "deletePlaylist",
+		"createShare", "updateShare", "deleteShare", "addChatMessage", "jukeboxControl", "createBookmark", "deleteBookmark",
+		"createPodcastChannel", "deletePodcastChannel", "refreshPodcasts", "downloadPodcastEpisode", "deletePodcastEpisode",
+		"createUser", "updateUser", "deleteUser", "changePassword"));
+
+	private final int maxAttempts;
+	private final long baseDelayMillis;
+	private final long maxDelayMillis;
+	private final int failuresToOpen;
+	private final long openMillis;
+	private final Random random = new Random();
+	private final Map<String, HostState> hosts = new HashMap<String, HostState>();
+
+	private final AtomicInteger retryCount = new AtomicInteger();
+	private final AtomicInteger failureCount = new AtomicInteger();
+	private final AtomicInteger fastFailCount = new AtomicInteger();
+
+	public RetryPolicy() {
+		this(5, 250L, 4000L, 3, 30000L);
+	}
+	public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis, int failuresToOpen, long openMillis) {
+		this.maxAttempts = maxAttempts;
+		this.baseDelayMillis = baseDelayMillis;
+		this.maxDelayMillis = maxDelayMillis;
+		this.failuresToOpen = failuresToOpen;
+		this.openMillis = openMillis;
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * Throws right away if the host is known to be down, rather than waiting for it to time out again
+	 */
+	public void checkHost(String host) throws IOException {
+		synchronized (hosts) {
+			HostState state = hosts.get(host);
+			if(state == null || state.openUntil == 0L) {
+				return;
+			}
+
+			long now = System.currentTimeMillis();
+			if(state.openUntil > now) {
+				fastFailCount.incrementAndGet();
+				throw new IOException(host + " is unreachable, not retrying for " + (state.openUntil - now) / 1000L + "s");
+			}
+			// Give up on a probe that never reported back so the host isn't stuck
+			if(state.probeStarted != 0L && now - state.probeStarted < openMillis) {
+				fastFailCount.incrementAndGet();
+				throw new IOException(host + " is unreachable, waiting to hear back from a test request");
+			}
+			state.probeStarted = now;
+		}
+	}
+
+	public boolean shouldRetry(String method, int attempts, IOException x) {
+		if(attempts >= maxAttempts) {
+			return false;
+		}
+		if(UNSAFE_METHODS.contains(method) && !isConnectFailure(x)) {
+			Log.w(TAG, "Not retrying " + method + " since it may have already reached the server");
+			return false;
+		}
+
+		retryCount.incrementAndGet();
+		return true;
+	}
+
+	public long getDelayMillis(int attempts) {
+		long max = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempts - 1, 16));
+		synchronized (random) {
+			return (long) (random.nextDouble() * max);
+		}
+	}
+
+	public void onSuccess(String host) {
+		synchronized (hosts) {
+			hosts.remove(host);
+		}
+	}
+
+	public void onFailure(String host) {
+		failureCount.incrementAndGet();
+		synchronized (hosts) {
+			HostState state = hosts.get(host);
+			if(state == null) {
+				state = new HostState();
+				hosts.put(host, state);
+			}
+
+			state.failures++;
+			if(state.failures >= failuresToOpen || state.probeStarted != 0L) {
+				// Let one request through once this runs out to see if it is back
+				state.openUntil = System.currentTimeMillis() + openMillis;
+				state.probeStarted = 0L;
+				Log.w(TAG, host + " failed " + state.failures + " times in a row, failing fast for " + openMillis / 1000L + "s");
+			}
+		}
+
+		Log.i(TAG, "Retried " + retryCount.get() + " times, gave up on " + failureCount.get() + " requests, failed " + fastFailCount.get() + " fast");
+	}
+
+	/**
+	 * A cancelled request says nothing about the host, but if it was the test request let the next one try instead
+	 */
+	public void onCancel(String host) {
+		synchronized (hosts) {
+			HostState state = hosts.get(host);
+			if(state != null) {
+				state.probeStarted = 0L;
+			}
+		}
+	}
+
+	private boolean isConnectFailure(IOException x) {
+		return x instanceof ConnectException || x instanceof ConnectTimeoutException || x instanceof NoRouteToHostException || x instanceof UnknownHostException;
+	}
+
+	public int getRetryCount() {
+		return retryCount.get();
+	}
+	public int getFailureCount() {
+		return failureCount.get();
+	}
+	public int getFastFailCount() {
+		return fastFailCount.get();
+	}
+
+	private static class HostState {
+		int failures;
+		long openUntil;
+		long probeStarted;
+	}
+}
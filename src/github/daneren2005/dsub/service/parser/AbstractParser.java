@@ -19,10 +19,13 @@
 package github.daneren2005.dsub.service.parser;
 
 import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.xmlpull.v1.XmlPullParser;
 
 import android.content.Context;
+import android.util.SparseArray;
 import android.util.Xml;
 import github.daneren2005.dsub.R;
 import github.daneren2005.dsub.domain.Version;
@@ -37,6 +40,9 @@ public abstract class AbstractParser {
     protected final Context context;
     private XmlPullParser parser;
     private boolean rootElementFound;
+	// Low cardinality values repeat across every entry of a response, only keep one copy of each around
+	private final Map<String, String> stringPool = new HashMap<String, String>();
+	private final SparseArray<Integer> integerPool = new SparseArray<Integer>();
 
     public AbstractParser(Context context) {
         this.context = context;
@@ -47,7 +53,7 @@ public abstract class AbstractParser {
     }
 
     protected void handleError() throws Exception {
-        int code = getInteger("code");
+        int code = getInt("code", 0);
         String message;
         switch (code) {
 			case 0:
@@ -101,6 +107,40 @@ public abstract class AbstractParser {
         return s == null ? null : Integer.valueOf(s);
     }
 
+    protected int getInt(String name, int defaultValue) {
+        String s = get(name);
+        return s == null ? defaultValue : Integer.parseInt(s);
+    }
+
+    protected String getShared(String name) {
+        String s = get(name);
+        if (s == null) {
+            return null;
+        }
+
+        String shared = stringPool.get(s);
+        if (shared == null) {
+            stringPool.put(s, s);
+            shared = s;
+        }
+        return shared;
+    }
+
+    protected Integer getSharedInteger(String name) {
+        String s = get(name);
+        if (s == null) {
+            return null;
+        }
+
+        int value = Integer.parseInt(s);
+        Integer shared = integerPool.get(value);
+        if (shared == null) {
+            shared = value;
+            integerPool.put(value, shared);
+        }
+        return shared;
+    }
+
     protected Long getLong(String name) {
         String s = get(name);
         return s == null ? null : Long.valueOf(s);
@@ -115,6 +155,8 @@ public abstract class AbstractParser {
         parser = Xml.newPullParser();
         parser.setInput(reader);
         rootElementFound = false;
+        stringPool.clear();
+        integerPool.clear();
     }
 
     protected int nextParseEvent() throws Exception {
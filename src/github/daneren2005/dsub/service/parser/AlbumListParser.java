@@ -55,6 +55,7 @@ public class AlbumListParser extends MusicDirectoryEntryParser {
         } while (eventType != XmlPullParser.END_DOCUMENT);
 
         validate();
+        dir.compact();
 
         return dir;
     }
@@ -30,6 +30,7 @@ import github.daneren2005.dsub.R;
 import github.daneren2005.dsub.domain.Artist;
 import github.daneren2005.dsub.domain.Indexes;
 import github.daneren2005.dsub.domain.MusicDirectory;
+import github.daneren2005.dsub.util.ChunkListener;
 import github.daneren2005.dsub.util.ProgressListener;
 import android.util.Log;
 import github.daneren2005.dsub.util.Constants;
@@ -40,6 +41,9 @@ import github.daneren2005.dsub.util.Util;
  */
 public class IndexesParser extends MusicDirectoryEntryParser {
     private static final String TAG = IndexesParser.class.getSimpleName();
+	// Small first chunk so the first screen shows up quickly, larger ones after to keep the adapter churn down
+	private static final int FIRST_CHUNK_SIZE = 50;
+	private static final int CHUNK_SIZE = 500;
 	
 	private Context context;
 
@@ -61,6 +65,13 @@ public class IndexesParser extends MusicDirectoryEntryParser {
 		String ignoredArticles = null;
         boolean changed = false;
 
+		ChunkListener<Artist> chunkListener = null;
+		List<Artist> chunk = null;
+		if(progressListener instanceof ChunkListener) {
+			chunkListener = (ChunkListener<Artist>) progressListener;
+			chunk = new ArrayList<Artist>(FIRST_CHUNK_SIZE);
+		}
+
         do {
             eventType = nextParseEvent();
             if (eventType == XmlPullParser.START_TAG) {
@@ -80,6 +91,14 @@ public class IndexesParser extends MusicDirectoryEntryParser {
 					artist.setStarred(get("starred") != null);
                     artists.add(artist);
 
+					if(chunkListener != null) {
+						chunk.add(artist);
+						if(chunk.size() >= (artists.size() == chunk.size() ? FIRST_CHUNK_SIZE : CHUNK_SIZE)) {
+							chunkListener.onChunk(chunk);
+							chunk = new ArrayList<Artist>(CHUNK_SIZE);
+						}
+					}
+
                     if (artists.size() % 10 == 0) {
                         String msg = getContext().getResources().getString(R.string.parser_artist_count, artists.size());
                         updateProgress(progressListener, msg);
@@ -101,6 +120,11 @@ public class IndexesParser extends MusicDirectoryEntryParser {
         } while (eventType != XmlPullParser.END_DOCUMENT);
 
         validate();
+
+		// Send whatever didn't fill a whole chunk
+		if(chunkListener != null && !chunk.isEmpty()) {
+			chunkListener.onChunk(chunk);
+		}
 		
 		if(ignoredArticles != null) {
 			SharedPreferences.Editor prefs = Util.getPreferences(context).edit();
@@ -32,33 +32,33 @@ public class MusicDirectoryEntryParser extends AbstractParser {
     protected MusicDirectory.Entry parseEntry(String artist) {
         MusicDirectory.Entry entry = new MusicDirectory.Entry();
         entry.setId(get("id"));
-		entry.setParent(get("parent"));
-		entry.setArtistId(get("artistId"));
+		entry.setParent(getShared("parent"));
+		entry.setArtistId(getShared("artistId"));
         entry.setTitle(get("title"));
 		if(entry.getTitle() == null) {
 			entry.setTitle(get("name"));
 		}
         entry.setDirectory(getBoolean("isDir"));
-        entry.setCoverArt(get("coverArt"));
-        entry.setArtist(get("artist"));
+        entry.setCoverArt(getShared("coverArt"));
+        entry.setArtist(getShared("artist"));
         entry.setStarred(get("starred") != null);
-        entry.setYear(getInteger("year"));
-        entry.setGenre(get("genre"));
-		entry.setAlbum(get("album"));
+        entry.setYear(getSharedInteger("year"));
+        entry.setGenre(getShared("genre"));
+		entry.setAlbum(getShared("album"));
 
         if (!entry.isDirectory()) {
-			entry.setAlbumId(get("albumId"));
-            entry.setTrack(getInteger("track"));
-            entry.setContentType(get("contentType"));
-            entry.setSuffix(get("suffix"));
-            entry.setTranscodedContentType(get("transcodedContentType"));
-            entry.setTranscodedSuffix(get("transcodedSuffix"));
+			entry.setAlbumId(getShared("albumId"));
+            entry.setTrack(getSharedInteger("track"));
+            entry.setContentType(getShared("contentType"));
+            entry.setSuffix(getShared("suffix"));
+            entry.setTranscodedContentType(getShared("transcodedContentType"));
+            entry.setTranscodedSuffix(getShared("transcodedSuffix"));
             entry.setSize(getLong("size"));
-            entry.setDuration(getInteger("duration"));
-            entry.setBitRate(getInteger("bitRate"));
+            entry.setDuration(getSharedInteger("duration"));
+            entry.setBitRate(getSharedInteger("bitRate"));
             entry.setPath(get("path"));
             entry.setVideo(getBoolean("isVideo"));
-			entry.setDiscNumber(getInteger("discNumber"));
+			entry.setDiscNumber(getSharedInteger("discNumber"));
         } else if(!"".equals(artist)) {
 			entry.setPath(artist + "/" + entry.getTitle());
 		}
@@ -56,6 +56,7 @@ public class PlaylistParser extends MusicDirectoryEntryParser {
         } while (eventType != XmlPullParser.END_DOCUMENT);
 
         validate();
+        dir.compact();
 
         return dir;
     }
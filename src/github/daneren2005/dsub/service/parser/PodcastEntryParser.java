@@ -72,13 +72,13 @@ public class PodcastEntryParser extends AbstractParser {
 					if(episode.getDate() != null && episode.getDate().indexOf("T") != -1) {
 						episode.setDate(episode.getDate().replace("T", " "));
 					}
-					episode.setStatus(get("status"));
+					episode.setStatus(getShared("status"));
 					episode.setCoverArt(get("coverArt"));
 					episode.setSize(getLong("size"));
-					episode.setContentType(get("contentType"));
-					episode.setSuffix(get("suffix"));
-					episode.setDuration(getInteger("duration"));
-					episode.setBitRate(getInteger("bitRate"));
+					episode.setContentType(getShared("contentType"));
+					episode.setSuffix(getShared("suffix"));
+					episode.setDuration(getSharedInteger("duration"));
+					episode.setBitRate(getSharedInteger("bitRate"));
 					episode.setVideo(getBoolean("isVideo"));
 					episode.setPath(get("path"));
 					if(episode.getPath() == null) {
@@ -53,6 +53,7 @@ public class RandomSongsParser extends MusicDirectoryEntryParser {
         } while (eventType != XmlPullParser.END_DOCUMENT);
 
         validate();
+        dir.compact();
 
         return dir;
     }
@@ -61,6 +61,7 @@ public class StarredListParser extends MusicDirectoryEntryParser {
         } while (eventType != XmlPullParser.END_DOCUMENT);
 
         validate();
+        dir.compact();
 
         return dir;
     }
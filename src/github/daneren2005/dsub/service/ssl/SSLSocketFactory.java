@@ -27,6 +27,10 @@
 
 package github.daneren2005.dsub.service.ssl;
 
+import android.content.Context;
+import android.net.SSLSessionCache;
+import android.util.Log;
+
 import org.apache.http.conn.ConnectTimeoutException;
 import org.apache.http.conn.scheme.HostNameResolver;
 import org.apache.http.conn.scheme.LayeredSocketFactory;
@@ -41,12 +45,16 @@ import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
 import javax.net.ssl.X509TrustManager;
 
 import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
@@ -58,6 +66,10 @@ import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.UnrecoverableKeyException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Layered socket factory for TLS/SSL connections.
@@ -140,6 +152,7 @@ import java.security.UnrecoverableKeyException;
  * @since 4.0
  */
 public class SSLSocketFactory implements LayeredSocketFactory {
+    private static final String TAG = SSLSocketFactory.class.getSimpleName();
 
     public static final String TLS   = "TLS";
     public static final String SSL   = "SSL";
@@ -169,8 +182,17 @@ public class SSLSocketFactory implements LayeredSocketFactory {
         return DEFAULT_FACTORY;
     }
 
+    // Keep sessions around long enough that reconnecting after an idle connection is dropped can resume instead of doing a full handshake
+    private static final int SESSION_CACHE_SIZE = 32;
+    private static final int SESSION_TIMEOUT_SECONDS = 24 * 60 * 60;
+
     private final javax.net.ssl.SSLSocketFactory socketfactory;
+    private final SSLContext sslContext;
     private final HostNameResolver nameResolver;
+    private final Map<String, byte[]> lastSessionIds = new HashMap<String, byte[]>();
+    private final AtomicInteger fullHandshakes = new AtomicInteger();
+    private final AtomicInteger resumedHandshakes = new AtomicInteger();
+    private boolean persistentCache = false;
     // TODO: make final
     private volatile X509HostnameVerifier hostnameVerifier;
 
@@ -310,8 +332,10 @@ public class SSLSocketFactory implements LayeredSocketFactory {
             final SSLContext sslContext, final HostNameResolver nameResolver) {
         super();
         this.socketfactory = sslContext.getSocketFactory();
+        this.sslContext = sslContext;
         this.hostnameVerifier = BROWSER_COMPATIBLE_HOSTNAME_VERIFIER;
         this.nameResolver = nameResolver;
+        configureSessionCache();
     }
 
     /**
@@ -321,33 +345,73 @@ public class SSLSocketFactory implements LayeredSocketFactory {
             final SSLContext sslContext, final X509HostnameVerifier hostnameVerifier) {
         super();
         this.socketfactory = sslContext.getSocketFactory();
+        this.sslContext = sslContext;
         this.hostnameVerifier = hostnameVerifier;
         this.nameResolver = null;
+        configureSessionCache();
     }
 
     private SSLSocketFactory() {
         super();
         this.socketfactory = HttpsURLConnection.getDefaultSSLSocketFactory();
+        this.sslContext = null;
         this.hostnameVerifier = null;
         this.nameResolver = null;
     }
 
+    private void configureSessionCache() {
+        SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+        if (sessionContext != null) {
+            sessionContext.setSessionCacheSize(SESSION_CACHE_SIZE);
+            sessionContext.setSessionTimeout(SESSION_TIMEOUT_SECONDS);
+        }
+    }
+
+    /**
+     * Backs the in memory session cache with one on disk so sessions can still be resumed after the process restarts.
+     * There is no public API to attach it to our own SSLContext, so this does what SSLCertificateSocketFactory does internally
+     * and quietly stays memory only if that fails.
+     */
+    public synchronized void setPersistentSessionCache(Context context) {
+        if (sslContext == null || persistentCache) {
+            return;
+        }
+        persistentCache = true;
+
+        try {
+            SSLSessionCache cache = new SSLSessionCache(context);
+            Field field = SSLSessionCache.class.getDeclaredField("mSessionCache");
+            field.setAccessible(true);
+
+            SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+            Method setPersistentCache = sessionContext.getClass().getMethod("setPersistentCache", field.getType());
+            setPersistentCache.invoke(sessionContext, field.get(cache));
+        } catch (Throwable x) {
+            Log.w(TAG, "Failed to setup persistent TLS session cache", x);
+        }
+    }
+
+    public int getFullHandshakeCount() {
+        return fullHandshakes.get();
+    }
+
+    public int getResumedHandshakeCount() {
+        return resumedHandshakes.get();
+    }
+
     /**
      * @param params Optional parameters. Parameters passed to this method will have no effect.
      *               This method will create a unconnected instance of {@link Socket} class
      *               using {@link javax.net.ssl.SSLSocketFactory#createSocket()} method.
      * @since 4.1
      */
-    @SuppressWarnings("cast")
     public Socket createSocket(final HttpParams params) throws IOException {
-        // the cast makes sure that the factory is working as expected
-        return (SSLSocket) this.socketfactory.createSocket();
+        return createSocket();
     }
 
-    @SuppressWarnings("cast")
     public Socket createSocket() throws IOException {
-        // the cast makes sure that the factory is working as expected
-        return (SSLSocket) this.socketfactory.createSocket();
+        // Plain socket, TLS is layered on top once connected so the session can be looked up by host and port
+        return new Socket();
     }
 
     /**
@@ -361,36 +425,42 @@ public class SSLSocketFactory implements LayeredSocketFactory {
         if (remoteAddress == null) {
             throw new IllegalArgumentException("Remote address may not be null");
         }
+        return connectSocket(sock, remoteAddress.getHostName(), remoteAddress, localAddress, params);
+    }
+
+    private Socket connectSocket(
+            final Socket sock,
+            final String host,
+            final InetSocketAddress remoteAddress,
+            final InetSocketAddress localAddress,
+            final HttpParams params) throws IOException, UnknownHostException, ConnectTimeoutException {
         if (params == null) {
             throw new IllegalArgumentException("HTTP parameters may not be null");
         }
-        SSLSocket sslsock = (SSLSocket) (sock != null ? sock : createSocket());
+        Socket plainsock = sock != null ? sock : createSocket();
         if (localAddress != null) {
-//            sslsock.setReuseAddress(HttpConnectionParams.getSoReuseaddr(params));
-            sslsock.bind(localAddress);
+//            plainsock.setReuseAddress(HttpConnectionParams.getSoReuseaddr(params));
+            plainsock.bind(localAddress);
         }
 
         int connTimeout = HttpConnectionParams.getConnectionTimeout(params);
         int soTimeout = HttpConnectionParams.getSoTimeout(params);
 
         try {
-            sslsock.connect(remoteAddress, connTimeout);
+            plainsock.connect(remoteAddress, connTimeout);
         } catch (SocketTimeoutException ex) {
-            throw new ConnectTimeoutException("Connect to " + remoteAddress.getHostName() + "/"
+            throw new ConnectTimeoutException("Connect to " + host + "/"
                     + remoteAddress.getAddress() + " timed out");
         }
-        sslsock.setSoTimeout(soTimeout);
-        if (this.hostnameVerifier != null) {
-            try {
-                this.hostnameVerifier.verify(remoteAddress.getHostName(), sslsock);
-                // verifyHostName() didn't blowup - good!
-            } catch (IOException iox) {
-                // close the socket before re-throwing the exception
-                try { sslsock.close(); } catch (Exception x) { /*ignore*/ }
-                throw iox;
-            }
+        plainsock.setSoTimeout(soTimeout);
+
+        try {
+            return createLayeredSocket(plainsock, host, remoteAddress.getPort(), true);
+        } catch (IOException iox) {
+            // close the socket before re-throwing the exception
+            try { plainsock.close(); } catch (Exception x) { /*ignore*/ }
+            throw iox;
         }
-        return sslsock;
     }
 
 
@@ -412,7 +482,7 @@ public class SSLSocketFactory implements LayeredSocketFactory {
         if (sock == null) {
             throw new IllegalArgumentException("Socket may not be null");
         }
-        // This instanceof check is in line with createSocket() above.
+        // This instanceof check is in line with connectSocket() above.
         if (!(sock instanceof SSLSocket)) {
             throw new IllegalArgumentException("Socket not created by this factory");
         }
@@ -437,13 +507,38 @@ public class SSLSocketFactory implements LayeredSocketFactory {
               port,
               autoClose
         );
-        if (this.hostnameVerifier != null) {
-            this.hostnameVerifier.verify(host, sslSocket);
+        try {
+            sslSocket.startHandshake();
+            recordHandshake(host + ":" + port, sslSocket.getSession());
+            if (this.hostnameVerifier != null) {
+                this.hostnameVerifier.verify(host, sslSocket);
+            }
+        } catch (IOException iox) {
+            try { sslSocket.close(); } catch (Exception x) { /*ignore*/ }
+            throw iox;
         }
         // verifyHostName() didn't blowup - good!
         return sslSocket;
     }
 
+    private void recordHandshake(String hostPort, SSLSession session) {
+        // A resumed session comes back with the same id as the last one for this host
+        byte[] id = session.getId();
+        boolean resumed;
+        synchronized (lastSessionIds) {
+            resumed = id != null && id.length > 0 && Arrays.equals(id, lastSessionIds.get(hostPort));
+            lastSessionIds.put(hostPort, id);
+        }
+
+        if (resumed) {
+            resumedHandshakes.incrementAndGet();
+        } else {
+            fullHandshakes.incrementAndGet();
+        }
+        Log.d(TAG, (resumed ? "Resumed" : "Full") + " TLS handshake with " + hostPort + ", "
+                + fullHandshakes.get() + " full and " + resumedHandshakes.get() + " resumed so far");
+    }
+
     @Deprecated
     public void setHostnameVerifier(X509HostnameVerifier hostnameVerifier) {
         if ( hostnameVerifier == null ) {
@@ -480,7 +575,7 @@ public class SSLSocketFactory implements LayeredSocketFactory {
             remoteAddress = InetAddress.getByName(host);
         }
         InetSocketAddress remote = new InetSocketAddress(remoteAddress, port);
-        return connectSocket(socket, remote, local, params);
+        return connectSocket(socket, host, remote, local, params);
     }
 
     /**
@@ -35,12 +35,14 @@ import android.net.NetworkInfo;
 import android.util.Log;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import github.daneren2005.dsub.domain.MusicDirectory;
 import github.daneren2005.dsub.service.CachedMusicService;
 import github.daneren2005.dsub.service.DownloadFile;
 import github.daneren2005.dsub.service.RESTMusicService;
 import github.daneren2005.dsub.util.Constants;
+import github.daneren2005.dsub.util.DirectoryExpander;
 import github.daneren2005.dsub.util.Util;
 
 /**
@@ -122,29 +124,34 @@ public class SubsonicSyncAdapter extends AbstractThreadedSyncAdapter {
 	
 	}
 	
-	protected boolean downloadRecursively(List<String> paths, MusicDirectory parent, Context context, boolean save) throws Exception {
-		boolean downloaded = false;
-		for (MusicDirectory.Entry song: parent.getChildren(false, true)) {
-			if (!song.isVideo()) {
-				DownloadFile file = new DownloadFile(context, song, save);
-				while(!(save && file.isSaved() || !save && file.isCompleteFileAvailable()) && !file.isFailedMax()) {
-					file.downloadNow(musicService);
-					downloaded = true;
-				}
-
-				if(paths != null && file.isCompleteFileAvailable()) {
-					paths.add(file.getCompleteFile().getPath());
-				}
+	protected boolean downloadRecursively(final List<String> paths, MusicDirectory parent, final Context context, final boolean save) throws Exception {
+		final AtomicBoolean downloaded = new AtomicBoolean(false);
+		DirectoryExpander.expand(parent, new DirectoryExpander.Loader() {
+			@Override
+			public MusicDirectory load(MusicDirectory.Entry dir) throws Exception {
+				return musicService.getMusicDirectory(dir.getId(), dir.getTitle(), true, context, null);
 			}
-		}
-		
-		for (MusicDirectory.Entry dir: parent.getChildren(true, false)) {
-			if(downloadRecursively(paths, musicService.getMusicDirectory(dir.getId(), dir.getTitle(), true, context, null), context, save)) {
-				downloaded = true;
+		}, new DirectoryExpander.Visitor() {
+			@Override
+			public boolean visit(MusicDirectory dir) throws Exception {
+				for (MusicDirectory.Entry song: dir.getChildren(false, true)) {
+					if (!song.isVideo()) {
+						DownloadFile file = new DownloadFile(context, song, save);
+						while(!(save && file.isSaved() || !save && file.isCompleteFileAvailable()) && !file.isFailedMax()) {
+							file.downloadNow(musicService);
+							downloaded.set(true);
+						}
+
+						if(paths != null && file.isCompleteFileAvailable()) {
+							paths.add(file.getCompleteFile().getPath());
+						}
+					}
+				}
+				return true;
 			}
-		}
+		});
 
-		return downloaded;
+		return downloaded.get();
 	}
 
 	private boolean isValidServer(Context context, int instance) {
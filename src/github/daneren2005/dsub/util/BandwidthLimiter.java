@@ -0,0 +1,150 @@
+/*
+	This file is part of Subsonic.
+
+	Subsonic is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	Subsonic is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with Subsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+	Copyright 2014 (C) Scott Jackson
+*/
+package github.daneren2005.dsub.util;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.os.PowerManager;
+import android.util.Log;
+
+/**
+ * Token bucket shared by every rate limited download so the caps apply to their combined throughput.
+ * The cap is picked from the screen and network state, which are tracked through broadcasts instead of being polled.
+ */
+public class BandwidthLimiter {
+	private static final String TAG = BandwidthLimiter.class.getSimpleName();
+	private static final long MIN_BURST = 64 * 1024L;
+	private static BandwidthLimiter instance;
+
+	private final Context context;
+	private boolean screenOn = true;
+	private boolean metered = false;
+	private long bytesPerSecond = 0;
+	private double tokens = 0;
+	private long lastRefill = System.nanoTime();
+
+	private final BroadcastReceiver stateReceiver = new BroadcastReceiver() {
+		@Override
+		public void onReceive(Context context, Intent intent) {
+			if(Intent.ACTION_SCREEN_ON.equals(intent.getAction())) {
+				screenOn = true;
+			} else if(Intent.ACTION_SCREEN_OFF.equals(intent.getAction())) {
+				screenOn = false;
+			} else {
+				metered = Util.isNetworkMetered(context);
+			}
+			update();
+		}
+	};
+	private final SharedPreferences.OnSharedPreferenceChangeListener preferenceListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+		@Override
+		public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+			if(key != null && key.startsWith(Constants.PREFERENCES_KEY_DOWNLOAD_LIMIT)) {
+				update();
+			}
+		}
+	};
+
+	public static synchronized BandwidthLimiter getInstance(Context context) {
+		if(instance == null) {
+			instance = new BandwidthLimiter(context.getApplicationContext());
+		}
+		return instance;
+	}
+
+	private BandwidthLimiter(Context context) {
+		this.context = context;
+
+		PowerManager pm = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+		screenOn = pm.isScreenOn();
+		metered = Util.isNetworkMetered(context);
+
+		IntentFilter filter = new IntentFilter();
+		filter.addAction(Intent.ACTION_SCREEN_ON);
+		filter.addAction(Intent.ACTION_SCREEN_OFF);
+		filter.addAction(ConnectivityManager.CONNECTIVITY_ACTION);
+		context.registerReceiver(stateReceiver, filter);
+		Util.getPreferences(context).registerOnSharedPreferenceChangeListener(preferenceListener);
+
+		update();
+	}
+
+	/**
+	 * Blocks until the given number of bytes fit within the current cap.  Waits are reserved up front so
+	 * concurrent callers queue behind each other rather than all waking up at once.
+	 */
+	public void acquire(int bytes) throws InterruptedException {
+		long waitNanos;
+		synchronized (this) {
+			if(bytesPerSecond <= 0) {
+				return;
+			}
+
+			refill();
+			tokens -= bytes;
+			waitNanos = tokens < 0 ? (long) (-tokens * 1000000000L / bytesPerSecond) : 0L;
+		}
+
+		if(waitNanos > 0) {
+			Thread.sleep(waitNanos / 1000000L, (int) (waitNanos % 1000000L));
+		}
+	}
+
+	public synchronized long getBytesPerSecond() {
+		return bytesPerSecond;
+	}
+
+	private void refill() {
+		long now = System.nanoTime();
+		long burst = Math.max(MIN_BURST, bytesPerSecond);
+		tokens = Math.min(burst, tokens + (now - lastRefill) * bytesPerSecond / 1000000000.0);
+		lastRefill = now;
+	}
+
+	private synchronized void update() {
+		SharedPreferences prefs = Util.getPreferences(context);
+		long screenLimit = getLimit(prefs, screenOn ? Constants.PREFERENCES_KEY_DOWNLOAD_LIMIT_SCREEN_ON : Constants.PREFERENCES_KEY_DOWNLOAD_LIMIT_SCREEN_OFF, screenOn ? "512" : "0");
+		long networkLimit = getLimit(prefs, metered ? Constants.PREFERENCES_KEY_DOWNLOAD_LIMIT_METERED : Constants.PREFERENCES_KEY_DOWNLOAD_LIMIT_WIFI, "0");
+
+		long limit;
+		if(screenLimit == 0) {
+			limit = networkLimit;
+		} else if(networkLimit == 0) {
+			limit = screenLimit;
+		} else {
+			limit = Math.min(screenLimit, networkLimit);
+		}
+
+		if(limit != bytesPerSecond) {
+			refill();
+			bytesPerSecond = limit;
+			tokens = Math.min(tokens, Math.max(MIN_BURST, limit));
+			lastRefill = System.nanoTime();
+			Log.i(TAG, "Limiting background downloads to " + (limit == 0 ? "unlimited" : (Util.formatBytes(limit) + "/s")));
+		}
+	}
+
+	private long getLimit(SharedPreferences prefs, String key, String defaultValue) {
+		return Long.parseLong(prefs.getString(key, defaultValue)) * 1024L;
+	}
+}
@@ -0,0 +1,217 @@
+/*
+	This file is part of Subsonic.
+
+	Subsonic is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	Subsonic is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with Subsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+	Copyright 2014 (C) Scott Jackson
+*/
+package github.daneren2005.dsub.util;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Intermediate bitmaps left over from decoding and scaling, kept around so decodes can draw into them instead of allocating new ones.
+ * Only bitmaps which were never handed out to be shown belong here, anything put in can be drawn over or recycled at any time.
+ * Bitmaps are bucketed by allocation size.  Before KitKat a reused bitmap has to be exactly the size asked for, after it
+ * anything large enough can be reconfigured, as long as it is not wasting more than twice the memory needed.
+ */
+@TargetApi(Build.VERSION_CODES.KITKAT)
+public class BitmapPool {
+	private static final String TAG = BitmapPool.class.getSimpleName();
+	private static final int STATS_INTERVAL = 100;
+	private static BitmapPool instance;
+
+	private final TreeMap<Integer, LinkedList<Bitmap>> buckets = new TreeMap<Integer, LinkedList<Bitmap>>();
+	// Oldest first, so the pool drops whatever has gone unused the longest
+	private final LinkedList<Bitmap> order = new LinkedList<Bitmap>();
+	private final int maxSize;
+	private int size = 0;
+	private int hits = 0;
+	private int misses = 0;
+
+	public static synchronized BitmapPool getInstance() {
+		if(instance == null) {
+			instance = new BitmapPool((int) (Runtime.getRuntime().maxMemory() / 16));
+		}
+		return instance;
+	}
+
+	private BitmapPool(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * inBitmap is only available from Honeycomb on, before that the pool always stays empty
+	 */
+	public static boolean isSupported() {
+		return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+	}
+
+	public static boolean canReconfigure() {
+		return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+	}
+
+	/**
+	 * Gets a bitmap of exactly this size and config, or null if the pool doesn't have one to give out and a new one needs to be allocated
+	 */
+	public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+		Bitmap bitmap = null;
+		if(isSupported()) {
+			int needed = width * height * getBytesPerPixel(config);
+			if(canReconfigure()) {
+				bitmap = take(needed, needed * 2, 0, 0, null);
+				if(bitmap != null) {
+					bitmap.reconfigure(width, height, config);
+				}
+			} else {
+				bitmap = take(needed, needed, width, height, config);
+			}
+		}
+
+		count(bitmap != null);
+		return bitmap;
+	}
+
+	/**
+	 * Gets a bitmap a decode sampled down by inSampleSize can go into.  Before KitKat decodes can only reuse bitmaps when not sampling.
+	 */
+	public synchronized Bitmap getForDecode(int outWidth, int outHeight, int inSampleSize, Bitmap.Config config) {
+		if(canReconfigure()) {
+			// Sampling can round up, leave room for it
+			int needed = ((outWidth + inSampleSize - 1) / inSampleSize) * ((outHeight + inSampleSize - 1) / inSampleSize) * getBytesPerPixel(config);
+			Bitmap bitmap = take(needed, needed * 2, 0, 0, null);
+			count(bitmap != null);
+			return bitmap;
+		} else if(inSampleSize <= 1) {
+			return get(outWidth, outHeight, config);
+		} else {
+			count(false);
+			return null;
+		}
+	}
+
+	public synchronized void put(Bitmap bitmap) {
+		if(!isSupported() || bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+			return;
+		}
+
+		int bytes = getSize(bitmap);
+		if(bytes > maxSize / 4) {
+			// Would push out everything else for a single reuse
+			bitmap.recycle();
+			return;
+		}
+
+		LinkedList<Bitmap> bucket = buckets.get(bytes);
+		if(bucket == null) {
+			bucket = new LinkedList<Bitmap>();
+			buckets.put(bytes, bucket);
+		}
+		bucket.add(bitmap);
+		order.add(bitmap);
+		size += bytes;
+
+		while(size > maxSize && !order.isEmpty()) {
+			Bitmap oldest = order.removeFirst();
+			int oldestBytes = getSize(oldest);
+			removeFromBucket(oldestBytes, oldest);
+			size -= oldestBytes;
+			oldest.recycle();
+		}
+	}
+
+	public synchronized void clear() {
+		for(Bitmap bitmap: order) {
+			bitmap.recycle();
+		}
+		buckets.clear();
+		order.clear();
+		size = 0;
+	}
+
+	private Bitmap take(int minBytes, int maxBytes, int width, int height, Bitmap.Config config) {
+		for(Map.Entry<Integer, LinkedList<Bitmap>> entry: buckets.subMap(minBytes, true, maxBytes, true).entrySet()) {
+			Iterator<Bitmap> it = entry.getValue().iterator();
+			while(it.hasNext()) {
+				Bitmap bitmap = it.next();
+				if(config == null || (bitmap.getWidth() == width && bitmap.getHeight() == height && bitmap.getConfig() == config)) {
+					it.remove();
+					if(entry.getValue().isEmpty()) {
+						buckets.remove(entry.getKey());
+					}
+					order.remove(bitmap);
+					size -= entry.getKey();
+					return bitmap;
+				}
+			}
+		}
+
+		return null;
+	}
+
+	private void removeFromBucket(int bytes, Bitmap bitmap) {
+		LinkedList<Bitmap> bucket = buckets.get(bytes);
+		if(bucket != null) {
+			bucket.remove(bitmap);
+			if(bucket.isEmpty()) {
+				buckets.remove(bytes);
+			}
+		}
+	}
+
+	private void count(boolean hit) {
+		if(hit) {
+			hits++;
+		} else {
+			misses++;
+		}
+
+		if((hits + misses) % STATS_INTERVAL == 0) {
+			Log.d(TAG, "Reused " + hits + " bitmaps, allocated " + misses + ", holding " + Util.formatBytes(size));
+		}
+	}
+
+	public synchronized int getHitCount() {
+		return hits;
+	}
+	public synchronized int getMissCount() {
+		return misses;
+	}
+
+	private static int getSize(Bitmap bitmap) {
+		if(canReconfigure()) {
+			return bitmap.getAllocationByteCount();
+		} else {
+			return bitmap.getRowBytes() * bitmap.getHeight();
+		}
+	}
+
+	private static int getBytesPerPixel(Bitmap.Config config) {
+		if(config == Bitmap.Config.ALPHA_8) {
+			return 1;
+		} else if(config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+			return 2;
+		} else {
+			return 4;
+		}
+	}
+}
@@ -24,6 +24,7 @@ public class CacheCleaner {
 
     private static final String TAG = CacheCleaner.class.getSimpleName();
 	private static final long MIN_FREE_SPACE = 500 * 1024L * 1024L;
+	private static final long MAX_SCALED_ART_SIZE = 50 * 1024L * 1024L;
 
     private final Context context;
     private final DownloadService downloadService;
@@ -120,6 +121,32 @@ public class CacheCleaner {
         Log.i(TAG, "Deleted           : " + Util.formatBytes(bytesDeleted));
     }
 
+	// Scaled copies of album art are made again whenever they are missing, so just keep the newest
+	private void deleteScaledAlbumArt() {
+		List<File> files = new ArrayList<File>(FileUtil.listFiles(FileUtil.getScaledAlbumArtDirectory(context)));
+		long bytesUsed = 0L;
+		for(File file: files) {
+			bytesUsed += file.length();
+		}
+		if(bytesUsed <= MAX_SCALED_ART_SIZE) {
+			return;
+		}
+
+		sortByAscendingModificationTime(files);
+		long bytesDeleted = 0L;
+		for(File file: files) {
+			if(bytesUsed - bytesDeleted <= MAX_SCALED_ART_SIZE) {
+				break;
+			}
+
+			long size = file.length();
+			if(Util.delete(file)) {
+				bytesDeleted += size;
+			}
+		}
+		Log.i(TAG, "Deleted scaled art: " + Util.formatBytes(bytesDeleted));
+	}
+
     private void findCandidatesForDeletion(File file, List<File> files, List<File> pinned, List<File> dirs) {
         if (file.isFile()) {
             String name = file.getName();
@@ -189,6 +216,7 @@ public class CacheCleaner {
 
 				deleteFiles(files, undeletable, getMinimumDelete(files, pinned), true);
 				deleteEmptyDirs(dirs, undeletable);
+				deleteScaledAlbumArt();
 			} catch (RuntimeException x) {
 				Log.e(TAG, "Error in cache cleaning.", x);
 			}
@@ -0,0 +1,29 @@
+/*
+	This file is part of Subsonic.
+
+	Subsonic is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	Subsonic is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with Subsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+	Copyright 2014 (C) Scott Jackson
+*/
+package github.daneren2005.dsub.util;
+
+import java.util.List;
+
+/**
+ * Implemented by a ProgressListener that wants to see parsed items before the whole response is done.
+ * Chunks are handed over on the parsing thread and are not touched by the parser afterwards.
+ */
+public interface ChunkListener<T> {
+	void onChunk(List<T> chunk);
+}
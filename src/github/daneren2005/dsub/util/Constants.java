@@ -94,6 +94,13 @@ public final class Constants {
     public static final String PREFERENCES_KEY_CACHE_LOCATION = "cacheLocation";
     public static final String PREFERENCES_KEY_PRELOAD_COUNT_WIFI = "preloadCountWifi";
 	public static final String PREFERENCES_KEY_PRELOAD_COUNT_MOBILE = "preloadCountMobile";
+	public static final String PREFERENCES_KEY_DOWNLOAD_CONCURRENCY = "downloadConcurrency";
+	public static final String PREFERENCES_KEY_PREFETCH_DIRECTORIES = "prefetchDirectories";
+	public static final String PREFERENCES_KEY_DOWNLOAD_LIMIT = "downloadLimit";
+	public static final String PREFERENCES_KEY_DOWNLOAD_LIMIT_SCREEN_ON = "downloadLimitScreenOn";
+	public static final String PREFERENCES_KEY_DOWNLOAD_LIMIT_SCREEN_OFF = "downloadLimitScreenOff";
+	public static final String PREFERENCES_KEY_DOWNLOAD_LIMIT_WIFI = "downloadLimitWifi";
+	public static final String PREFERENCES_KEY_DOWNLOAD_LIMIT_METERED = "downloadLimitMetered";
     public static final String PREFERENCES_KEY_HIDE_MEDIA = "hideMedia";
     public static final String PREFERENCES_KEY_MEDIA_BUTTONS = "mediaButtons";
     public static final String PREFERENCES_KEY_SCREEN_LIT_ON_DOWNLOAD = "screenLitOnDownload";
@@ -149,6 +156,8 @@ public final class Constants {
 	public static final String OFFLINE_STAR_ID = "starID";
 	public static final String OFFLINE_STAR_SEARCH = "starTitle";
 	public static final String OFFLINE_STAR_SETTING = "starSetting";
+	public static final String OFFLINE_JOURNAL_SCROBBLE_COUNT = "journalScrobbleCount";
+	public static final String OFFLINE_JOURNAL_STAR_COUNT = "journalStarCount";
 	
 	public static final String CACHE_KEY_IGNORE = "ignoreArticles";
 	
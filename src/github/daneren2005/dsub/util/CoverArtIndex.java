@@ -0,0 +1,174 @@
+/*
+	This file is part of Subsonic.
+
+	Subsonic is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	Subsonic is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with Subsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+	Copyright 2014 (C) Scott Jackson
+*/
+package github.daneren2005.dsub.util;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import github.daneren2005.dsub.domain.MusicDirectory;
+
+/**
+ * Remembers what FileUtil.lookupChild would find for a directory, the cover art of its first child and the folder its songs
+ * are saved in, so it can be answered from memory instead of reading the whole cached directory.  Filled in whenever a directory
+ * is loaded, read in the background the first time it is needed, and saved a little while after it changes.  Only the most
+ * recently used directories are kept.
+ */
+public class CoverArtIndex {
+	private static final String TAG = CoverArtIndex.class.getSimpleName();
+	private static final long SAVE_DELAY_MILLIS = 30000L;
+	private static final int MAX_ENTRIES = 2000;
+	private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+	private static CoverArtIndex instance;
+
+	private final Context context;
+	private final String fileName;
+	// Key is the same album-/directory- prefix plus id that lookupChild reads, value is the cover art id and the album folder.  In access order, least recently used first.
+	private final LinkedHashMap<String, String[]> index = new LinkedHashMap<String, String[]>(16, 0.75f, true);
+	private volatile boolean loaded = false;
+	private boolean saveScheduled = false;
+
+	private final Runnable saveTask = new Runnable() {
+		@Override
+		public void run() {
+			// Serialized right away on this thread, so holding the lock is all it takes to get a consistent snapshot
+			synchronized (CoverArtIndex.this) {
+				saveScheduled = false;
+				FileUtil.serialize(context, index, fileName);
+			}
+		}
+	};
+
+	public static synchronized CoverArtIndex getInstance(Context context) {
+		String fileName = "coverArtIndex-" + Util.getRestUrl(context, null, false).hashCode() + ".ser";
+		if(instance == null || !instance.fileName.equals(fileName)) {
+			instance = new CoverArtIndex(context.getApplicationContext(), fileName);
+		}
+		return instance;
+	}
+
+	private CoverArtIndex(Context context, String fileName) {
+		this.context = context;
+		this.fileName = fileName;
+
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				load();
+			}
+		});
+	}
+
+	/**
+	 * Returns the cover art id of the directory's first child, or null if it isn't known yet
+	 */
+	public String getCoverArt(Context context, MusicDirectory.Entry entry) {
+		String[] value = get(context, entry);
+		return value == null ? null : value[0];
+	}
+
+	/**
+	 * Returns the folder the directory's songs are saved to, or null if it isn't known yet
+	 */
+	public File getAlbumDirectory(Context context, MusicDirectory.Entry entry) {
+		String[] value = get(context, entry);
+		return (value == null || value[1] == null) ? null : new File(value[1]);
+	}
+
+	public void put(boolean album, String id, MusicDirectory dir) {
+		String coverArt = null;
+		List<MusicDirectory.Entry> children = dir.getChildren(true, true);
+		if(!children.isEmpty()) {
+			coverArt = children.get(0).getCoverArt();
+		}
+
+		String albumDir = null;
+		List<MusicDirectory.Entry> songs = dir.getChildren(false, true);
+		if(!songs.isEmpty()) {
+			File parent = FileUtil.getSongFile(context, songs.get(0)).getParentFile();
+			albumDir = parent == null ? null : parent.getPath();
+		}
+
+		if(coverArt == null && albumDir == null) {
+			return;
+		}
+
+		String key = getKey(album, id);
+		synchronized (this) {
+			String[] existing = index.get(key);
+			if(existing != null && Util.equals(existing[0], coverArt) && Util.equals(existing[1], albumDir)) {
+				return;
+			}
+			index.put(key, new String[] {coverArt, albumDir});
+			trim();
+
+			if(!saveScheduled) {
+				saveScheduled = true;
+				executor.schedule(saveTask, SAVE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	private String[] get(Context context, MusicDirectory.Entry entry) {
+		if(!loaded) {
+			return null;
+		}
+
+		String key = getKey(Util.isTagBrowsing(context), entry.getId());
+		synchronized (this) {
+			return index.get(key);
+		}
+	}
+
+	private void trim() {
+		Iterator<String> it = index.keySet().iterator();
+		while(index.size() > MAX_ENTRIES && it.hasNext()) {
+			it.next();
+			it.remove();
+		}
+	}
+
+	private String getKey(boolean album, String id) {
+		return (album ? "album-" : "directory-") + id;
+	}
+
+	private void load() {
+		LinkedHashMap<String, String[]> saved = FileUtil.deserialize(context, fileName, LinkedHashMap.class);
+		if(saved != null) {
+			synchronized (this) {
+				// Anything put while this was being read is newer, so goes after everything saved
+				LinkedHashMap<String, String[]> newer = new LinkedHashMap<String, String[]>(index);
+				index.clear();
+				index.putAll(saved);
+				index.putAll(newer);
+				trim();
+			}
+			Log.i(TAG, "Loaded " + saved.size() + " cover art lookups");
+		}
+		loaded = true;
+	}
+}
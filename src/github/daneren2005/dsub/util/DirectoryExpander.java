@@ -0,0 +1,101 @@
+/*
+	This file is part of Subsonic.
+
+	Subsonic is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	Subsonic is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with Subsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+	Copyright 2014 (C) Scott Jackson
+*/
+package github.daneren2005.dsub.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import github.daneren2005.dsub.domain.MusicDirectory;
+
+/**
+ * Walks a directory tree depth first like a plain recursive walk would, but requests all of a directory's sub directories at once
+ * so a long list of albums is not loaded one round trip at a time.  Directories are still handed to the visitor in their original order,
+ * on the calling thread, as soon as everything before them has been.
+ */
+public class DirectoryExpander {
+	private static final int PARALLEL_REQUESTS = 4;
+	// Shared so that several walks at once still don't hit the server with more than this many requests
+	private static final ExecutorService executor = Executors.newFixedThreadPool(PARALLEL_REQUESTS);
+
+	public interface Loader {
+		MusicDirectory load(MusicDirectory.Entry dir) throws Exception;
+	}
+
+	public interface Visitor {
+		/**
+		 * @return false to stop the walk
+		 */
+		boolean visit(MusicDirectory dir) throws Exception;
+	}
+
+	public static void expand(MusicDirectory root, Loader loader, Visitor visitor) throws Exception {
+		List<Future<MusicDirectory>> outstanding = new ArrayList<Future<MusicDirectory>>();
+		try {
+			expand(root, loader, visitor, outstanding);
+		} finally {
+			// Stopped early or failed, don't leave the rest of the requests running
+			for(Future<MusicDirectory> future: outstanding) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	private static boolean expand(MusicDirectory parent, final Loader loader, Visitor visitor, List<Future<MusicDirectory>> outstanding) throws Exception {
+		if(!visitor.visit(parent)) {
+			return false;
+		}
+
+		List<Future<MusicDirectory>> children = new ArrayList<Future<MusicDirectory>>();
+		for(final MusicDirectory.Entry dir: parent.getChildren(true, false)) {
+			Future<MusicDirectory> future = executor.submit(new Callable<MusicDirectory>() {
+				@Override
+				public MusicDirectory call() throws Exception {
+					return loader.load(dir);
+				}
+			});
+			children.add(future);
+			outstanding.add(future);
+		}
+
+		for(Future<MusicDirectory> child: children) {
+			MusicDirectory dir;
+			try {
+				dir = child.get();
+			} catch(ExecutionException e) {
+				Throwable cause = e.getCause();
+				if(cause instanceof Exception) {
+					throw (Exception) cause;
+				}
+				throw e;
+			}
+			outstanding.remove(child);
+
+			if(!expand(dir, loader, visitor, outstanding)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+}
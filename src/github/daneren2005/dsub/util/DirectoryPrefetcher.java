@@ -0,0 +1,126 @@
+/*
+	This file is part of Subsonic.
+
+	Subsonic is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	Subsonic is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with Subsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+	Copyright 2014 (C) Scott Jackson
+*/
+package github.daneren2005.dsub.util;
+
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import github.daneren2005.dsub.domain.MusicDirectory;
+import github.daneren2005.dsub.service.MusicService;
+import github.daneren2005.dsub.service.MusicServiceFactory;
+
+/**
+ * Loads the first few sub directories of what is on screen ahead of time, so tapping into one of them comes straight out of the cache.
+ * Runs on a single background priority thread, only on unmetered networks, and stops as soon as the user moves on.
+ */
+public class DirectoryPrefetcher {
+	private static final String TAG = DirectoryPrefetcher.class.getSimpleName();
+
+	// Shared by every screen so there is never more than one prefetch going at a time
+	private static final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			return new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+					runnable.run();
+				}
+			}, TAG);
+		}
+	});
+
+	private final Context context;
+	private final ImageLoader imageLoader;
+	private Future<?> current;
+
+	public DirectoryPrefetcher(Context context, ImageLoader imageLoader) {
+		this.context = context.getApplicationContext();
+		this.imageLoader = imageLoader;
+	}
+
+	public synchronized void prefetch(List<MusicDirectory.Entry> entries) {
+		cancel();
+
+		int budget = Util.getPrefetchDirectoryCount(context);
+		if(budget <= 0 || Util.isOffline(context) || Util.isNetworkMetered(context)) {
+			return;
+		}
+
+		final List<MusicDirectory.Entry> directories = new ArrayList<MusicDirectory.Entry>();
+		for(MusicDirectory.Entry entry: entries) {
+			if(entry.isDirectory()) {
+				directories.add(entry);
+				if(directories.size() >= budget) {
+					break;
+				}
+			}
+		}
+		if(directories.isEmpty()) {
+			return;
+		}
+
+		current = executor.submit(new Runnable() {
+			@Override
+			public void run() {
+				boolean tagBrowsing = Util.isTagBrowsing(context);
+				for(MusicDirectory.Entry entry: directories) {
+					if(Thread.currentThread().isInterrupted()) {
+						return;
+					}
+
+					try {
+						MusicService musicService = MusicServiceFactory.getMusicService(context);
+						MusicDirectory dir;
+						if(tagBrowsing) {
+							dir = musicService.getAlbum(entry.getId(), entry.getTitle(), false, context, null);
+						} else {
+							dir = musicService.getMusicDirectory(entry.getId(), entry.getTitle(), false, context, null);
+						}
+
+						// The album header shows the art of one of its songs, which is usually but not always the album's
+						List<MusicDirectory.Entry> songs = dir.getChildren(false, true);
+						if(imageLoader != null && !songs.isEmpty()) {
+							imageLoader.prefetchImage(context, songs.get(0));
+						}
+					} catch(InterruptedException e) {
+						return;
+					} catch(Exception e) {
+						Log.w(TAG, "Failed to prefetch " + entry.getTitle(), e);
+					}
+				}
+			}
+		});
+	}
+
+	public synchronized void cancel() {
+		if(current != null) {
+			current.cancel(true);
+			current = null;
+		}
+	}
+}
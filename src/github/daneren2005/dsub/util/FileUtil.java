@@ -19,6 +19,8 @@
 package github.daneren2005.dsub.util;
 
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -28,12 +30,18 @@ import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.io.Serializable;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.zip.DeflaterInputStream;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.InflaterInputStream;
@@ -42,11 +50,17 @@ import android.annotation.TargetApi;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
 import android.os.Build;
 import android.os.Environment;
+import android.os.Process;
 import android.support.v4.content.ContextCompat;
 import android.util.Log;
 import github.daneren2005.dsub.domain.Artist;
+import github.daneren2005.dsub.domain.CompactEntryList;
 import github.daneren2005.dsub.domain.Genre;
 import github.daneren2005.dsub.domain.Indexes;
 import github.daneren2005.dsub.domain.Playlist;
@@ -57,6 +71,7 @@ import github.daneren2005.dsub.domain.PodcastChannel;
 import github.daneren2005.dsub.domain.PodcastEpisode;
 
 import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.ByteBufferInputStream;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 
@@ -72,17 +87,45 @@ public class FileUtil {
 	private static final List<String> VIDEO_FILE_EXTENSIONS = Arrays.asList("flv", "mp4", "m4v", "wmv", "avi", "mov", "mpg", "mkv");
 	private static final List<String> PLAYLIST_FILE_EXTENSIONS = Arrays.asList("m3u");
     private static File DEFAULT_MUSIC_DIR;
-	private static final Kryo kryo = new Kryo();
-
-	static {
-		kryo.register(MusicDirectory.Entry.class);
-		kryo.register(Indexes.class);
-		kryo.register(Artist.class);
-		kryo.register(MusicFolder.class);
-		kryo.register(PodcastChannel.class);
-		kryo.register(Playlist.class);
-		kryo.register(Genre.class);
-	}
+	// Kryo instances aren't thread safe, give each thread its own instead of making every cache read wait on one
+	private static final ThreadLocal<Kryo> kryo = new ThreadLocal<Kryo>() {
+		@Override
+		protected Kryo initialValue() {
+			Kryo kryo = new Kryo();
+			kryo.register(MusicDirectory.Entry.class);
+			kryo.register(Indexes.class);
+			kryo.register(Artist.class);
+			kryo.register(MusicFolder.class);
+			kryo.register(PodcastChannel.class);
+			kryo.register(Playlist.class);
+			kryo.register(Genre.class);
+			kryo.register(CompactEntryList.class);
+			return kryo;
+		}
+	};
+	// Below this it is cheaper to read the whole file in one go than to set up a mapping
+	private static final long MAPPED_READ_SIZE = 64 * 1024L;
+	private static final Paint SCALE_PAINT = new Paint(Paint.FILTER_BITMAP_FLAG);
+	// Writes happen in order on their own thread, with only the newest object kept for each file
+	private static final ExecutorService writeExecutor = Executors.newSingleThreadExecutor();
+	private static final ConcurrentHashMap<String, PendingWrite> pendingWrites = new ConcurrentHashMap<String, PendingWrite>();
+	private static final Object writeLock = new Object();
+	// Scaled copies of album art being made, or which aren't worth making since the original is already that small
+	private static final ConcurrentHashMap<String, Boolean> pendingScaledArt = new ConcurrentHashMap<String, Boolean>();
+	// Decoding and compressing art is slow, keep it from holding up cache writes or competing with what is on screen
+	private static final ExecutorService scaledArtExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			return new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+					runnable.run();
+				}
+			}, TAG + "-art");
+		}
+	});
+	private static final int SCALED_ART_QUALITY = 90;
 	
 	public static File getAnySong(Context context) {
 		File dir = getMusicDirectory(context);
@@ -163,7 +206,9 @@ public class FileUtil {
 	}
 
     public static File getAlbumArtFile(Context context, MusicDirectory.Entry entry) {
-        File albumDir = getAlbumDirectory(context, entry);
+        return getAlbumArtFile(context, getAlbumDirectory(context, entry));
+    }
+	private static File getAlbumArtFile(Context context, File albumDir) {
 		File artFile;
 		File albumFile = getAlbumArtFile(albumDir);
 		File hexFile = getHexAlbumArtFile(context, albumDir);
@@ -176,7 +221,7 @@ public class FileUtil {
 			artFile = hexFile;
 		}
         return artFile;
-    }
+	}
 
     public static File getAlbumArtFile(File albumDir) {
         return new File(albumDir, Constants.ALBUM_ART_FILE);
@@ -186,32 +231,153 @@ public class FileUtil {
 	}
 
     public static Bitmap getAlbumArtBitmap(Context context, MusicDirectory.Entry entry, int size) {
-        File albumArtFile = getAlbumArtFile(context, entry);
-        if (albumArtFile.exists()) {
-			final BitmapFactory.Options opt = new BitmapFactory.Options();
-			opt.inJustDecodeBounds = true;
-			BitmapFactory.decodeFile(albumArtFile.getPath(), opt);
-			opt.inPurgeable = true;
-			opt.inSampleSize = Util.calculateInSampleSize(opt, size, Util.getScaledHeight(opt.outHeight, opt.outWidth, size));
-			opt.inJustDecodeBounds = false;
+		File albumDir = getAlbumDirectory(context, entry);
+        File albumArtFile = getAlbumArtFile(context, albumDir);
+		// Originals can be several megabytes, so decode the copy already scaled down to this size if there is one
+		File scaledFile = getScaledAlbumArtFile(context, albumDir, size);
+		if(scaledFile.exists() && (!albumArtFile.exists() || scaledFile.lastModified() >= albumArtFile.lastModified())) {
+			Bitmap bitmap = decodeSampledBitmap(scaledFile.getPath(), null, size);
+			if(bitmap != null) {
+				return getScaledBitmap(bitmap, size);
+			}
 
-			Bitmap bitmap = BitmapFactory.decodeFile(albumArtFile.getPath(), opt);
-			return bitmap == null ? null : getScaledBitmap(bitmap, size);
+			// Can't be decoded, get rid of it so it is made or downloaded again instead of tried every time
+			Log.w(TAG, "Deleting undecodable " + scaledFile);
+			scaledFile.delete();
+		}
+
+        if (albumArtFile.exists()) {
+			Bitmap bitmap = decodeSampledBitmap(albumArtFile.getPath(), null, size);
+			if(bitmap == null) {
+				return null;
+			}
+			queueScaledAlbumArt(albumArtFile, scaledFile, size);
+			return getScaledBitmap(bitmap, size);
         }
         return null;
     }
+	public static File getScaledAlbumArtFile(Context context, MusicDirectory.Entry entry, int size) {
+		return getScaledAlbumArtFile(context, getAlbumDirectory(context, entry), size);
+	}
+	// Named after the album rather than the art file, which moves from the artwork directory into the album once it is downloaded
+	private static File getScaledAlbumArtFile(Context context, File albumDir, int size) {
+		return new File(getScaledAlbumArtDirectory(context), Util.md5Hex(albumDir.getPath()) + "-" + size + ".jpeg");
+	}
+	private static void queueScaledAlbumArt(final File albumArtFile, final File scaledFile, final int size) {
+		final String key = scaledFile.getPath();
+		if(pendingScaledArt.putIfAbsent(key, Boolean.TRUE) != null) {
+			return;
+		}
+
+		scaledArtExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				if(writeScaledAlbumArt(albumArtFile, scaledFile, size)) {
+					pendingScaledArt.remove(key);
+				}
+			}
+		});
+	}
+	/**
+	 * Returns false if the original is no bigger than the size asked for, so there is no point in ever trying again
+	 */
+	private static boolean writeScaledAlbumArt(File albumArtFile, File scaledFile, int size) {
+		final BitmapFactory.Options opt = new BitmapFactory.Options();
+		opt.inJustDecodeBounds = true;
+		BitmapFactory.decodeFile(albumArtFile.getPath(), opt);
+		if(opt.outWidth > 0 && opt.outWidth <= size) {
+			return false;
+		}
+
+		Bitmap bitmap = decodeSampledBitmap(albumArtFile.getPath(), null, size);
+		if(bitmap == null) {
+			return true;
+		}
+		bitmap = getScaledBitmap(bitmap, size);
+
+		File tmp = new File(scaledFile.getPath() + ".tmp");
+		FileOutputStream out = null;
+		try {
+			out = new FileOutputStream(tmp);
+			bitmap.compress(Bitmap.CompressFormat.JPEG, SCALED_ART_QUALITY, out);
+			out.close();
+			out = null;
+
+			if(!tmp.renameTo(scaledFile)) {
+				throw new IOException("Failed to rename " + tmp + " to " + scaledFile);
+			}
+			Log.i(TAG, "Saved " + size + "px copy of " + albumArtFile);
+		} catch(IOException e) {
+			Log.w(TAG, "Failed to save scaled album art", e);
+			tmp.delete();
+		} finally {
+			Util.close(out);
+			if(BitmapPool.isSupported()) {
+				BitmapPool.getInstance().put(bitmap);
+			} else {
+				bitmap.recycle();
+			}
+		}
+		return true;
+	}
 	public static Bitmap getSampledBitmap(byte[] bytes, int size) {
+		Bitmap bitmap = decodeSampledBitmap(null, bytes, size);
+		return getScaledBitmap(bitmap, size);
+	}
+	public static Bitmap getScaledBitmap(Bitmap bitmap, int size) {
+		if(!BitmapPool.isSupported()) {
+			return Bitmap.createScaledBitmap(bitmap, size, Util.getScaledHeight(bitmap, size), true);
+		}
+
+		int height = Util.getScaledHeight(bitmap, size);
+		if(bitmap.getWidth() == size && bitmap.getHeight() == height) {
+			return bitmap;
+		}
+
+		// Draw into a reused bitmap instead of letting createScaledBitmap allocate one, then the sampled one can go back for the next decode
+		Bitmap.Config config = bitmap.getConfig() == null ? Bitmap.Config.ARGB_8888 : bitmap.getConfig();
+		BitmapPool pool = BitmapPool.getInstance();
+		Bitmap scaled = pool.get(size, height, config);
+		if(scaled == null) {
+			scaled = Bitmap.createBitmap(size, height, config);
+		} else {
+			scaled.eraseColor(Color.TRANSPARENT);
+		}
+		new Canvas(scaled).drawBitmap(bitmap, null, new Rect(0, 0, size, height), SCALE_PAINT);
+		pool.put(bitmap);
+		return scaled;
+	}
+	@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+	private static Bitmap decodeSampledBitmap(String path, byte[] bytes, int size) {
 		final BitmapFactory.Options opt = new BitmapFactory.Options();
 		opt.inJustDecodeBounds = true;
-		BitmapFactory.decodeByteArray(bytes, 0, bytes.length, opt);
-		opt.inPurgeable = true;
+		decodeBitmap(path, bytes, opt);
 		opt.inSampleSize = Util.calculateInSampleSize(opt, size, Util.getScaledHeight(opt.outHeight, opt.outWidth, size));
 		opt.inJustDecodeBounds = false;
-		Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length, opt);
-		return getScaledBitmap(bitmap, size);
+
+		if(!BitmapPool.isSupported()) {
+			opt.inPurgeable = true;
+			return decodeBitmap(path, bytes, opt);
+		}
+
+		BitmapPool pool = BitmapPool.getInstance();
+		opt.inMutable = true;
+		opt.inBitmap = pool.getForDecode(opt.outWidth, opt.outHeight, opt.inSampleSize, opt.inPreferredConfig);
+		try {
+			return decodeBitmap(path, bytes, opt);
+		} catch(IllegalArgumentException e) {
+			// Image can't be decoded into the one from the pool after all, so give it a new one
+			pool.put(opt.inBitmap);
+			opt.inBitmap = null;
+			return decodeBitmap(path, bytes, opt);
+		}
 	}
-	public static Bitmap getScaledBitmap(Bitmap bitmap, int size) {
-		return Bitmap.createScaledBitmap(bitmap, size, Util.getScaledHeight(bitmap, size), true);
+	private static Bitmap decodeBitmap(String path, byte[] bytes, BitmapFactory.Options opt) {
+		if(path != null) {
+			return BitmapFactory.decodeFile(path, opt);
+		} else {
+			return BitmapFactory.decodeByteArray(bytes, 0, bytes.length, opt);
+		}
 	}
 
 	public static File getAlbumArtDirectory(Context context) {
@@ -220,6 +386,11 @@ public class FileUtil {
 		ensureDirectoryExistsAndIsReadWritable(new File(albumArtDir, ".nomedia"));
 		return albumArtDir;
 	}
+	public static File getScaledAlbumArtDirectory(Context context) {
+		File scaledDir = new File(getAlbumArtDirectory(context), "scaled");
+		ensureDirectoryExistsAndIsReadWritable(scaledDir);
+		return scaledDir;
+	}
 
 	public static File getArtistDirectory(Context context, Artist artist) {
 		File dir = new File(getMusicDirectory(context).getPath() + "/" + fileSystemSafe(artist.getName()));
@@ -236,10 +407,13 @@ public class FileUtil {
             File f = new File(fileSystemSafeDir(entry.getPath()));
             dir = new File(getMusicDirectory(context).getPath() + "/" + (entry.isDirectory() ? f.getPath() : f.getParent()));
         } else {
-			MusicDirectory.Entry firstSong = lookupChild(context, entry, false);
-			if(firstSong != null) {
-				File songFile = FileUtil.getSongFile(context, firstSong);
-				dir = songFile.getParentFile();
+			dir = CoverArtIndex.getInstance(context).getAlbumDirectory(context, entry);
+			if(dir == null) {
+				MusicDirectory.Entry firstSong = lookupChild(context, entry, false);
+				if(firstSong != null) {
+					File songFile = FileUtil.getSongFile(context, firstSong);
+					dir = songFile.getParentFile();
+				}
 			}
 
 			if(dir == null) {
@@ -257,10 +431,12 @@ public class FileUtil {
 	public static MusicDirectory.Entry lookupChild(Context context, MusicDirectory.Entry entry, boolean allowDir) {
 		// Do a special lookup since 4.7+ doesn't match artist/album to entry.getPath
 		String s = Util.getRestUrl(context, null, false) + entry.getId();
-		String cacheName = (Util.isTagBrowsing(context) ? "album-" : "directory-") + s.hashCode() + ".ser";
+		boolean tagBrowsing = Util.isTagBrowsing(context);
+		String cacheName = (tagBrowsing ? "album-" : "directory-") + s.hashCode() + ".ser";
 		MusicDirectory entryDir = FileUtil.deserialize(context, cacheName, MusicDirectory.class);
 
 		if(entryDir != null) {
+			CoverArtIndex.getInstance(context).put(tagBrowsing, entry.getId(), entryDir);
 			List<MusicDirectory.Entry> songs = entryDir.getChildren(allowDir, true);
 			if(songs.size() > 0) {
 				return songs.get(0);
@@ -340,9 +516,16 @@ public class FileUtil {
 		return Util.recursiveDelete(musicDirectory);
 	}
 	public static void deleteSerializedCache(Context context) {
-		for(File file: context.getCacheDir().listFiles()) {
-			if(file.getName().indexOf(".ser") != -1) {
-				file.delete();
+		synchronized (writeLock) {
+			for(String fileName: pendingWrites.keySet()) {
+				if(fileName.indexOf(".ser") != -1) {
+					pendingWrites.remove(fileName);
+				}
+			}
+			for(File file: context.getCacheDir().listFiles()) {
+				if(file.getName().indexOf(".ser") != -1) {
+					file.delete();
+				}
 			}
 		}
 	}
@@ -523,101 +706,245 @@ public class FileUtil {
 		}
 	}
 
+	/**
+	 * Takes a copy of the object right away and writes it out in the background.  Returns false if it can't be serialized.
+	 */
     public static <T extends Serializable> boolean serialize(Context context, T obj, String fileName) {
-		synchronized (kryo) {
-			Output out = null;
-			try {
-				RandomAccessFile file = new RandomAccessFile(context.getCacheDir() + "/" + fileName, "rw");
-				out = new Output(new FileOutputStream(file.getFD()));
-				kryo.writeObject(out, obj);
-				Log.i(TAG, "Serialized object to " + fileName);
-				return true;
-			} catch (Throwable x) {
-				Log.w(TAG, "Failed to serialize object to " + fileName);
-				return false;
-			} finally {
-				Util.close(out);
-			}
-		}
+		return queueWrite(context, obj, fileName, false);
     }
 
+	/**
+	 * Writes the object out before returning, for state which has to survive the process going away right after
+	 */
+	public static <T extends Serializable> boolean serializeNow(Context context, T obj, String fileName) {
+		byte[] bytes = toBytes(obj, fileName, false);
+		if(bytes == null) {
+			return false;
+		}
+
+		synchronized (writeLock) {
+			// Anything still waiting to be written is older than this
+			pendingWrites.remove(fileName);
+			return writeNow(context, bytes, fileName, false);
+		}
+	}
+
+	/**
+	 * Deletes a serialized object along with any write of it which hasn't happened yet
+	 */
+	public static boolean deleteSerialized(Context context, String fileName) {
+		synchronized (writeLock) {
+			pendingWrites.remove(fileName);
+			File file = new File(context.getCacheDir(), fileName);
+			return !file.exists() || file.delete();
+		}
+	}
+
 	public static <T extends Serializable> T deserialize(Context context, String fileName, Class<T> tClass) {
 		return deserialize(context, fileName, tClass, 0);
 	}
 
     public static <T extends Serializable> T deserialize(Context context, String fileName, Class<T> tClass, int hoursOld) {
-		synchronized (kryo) {
-			Input in = null;
-			try {
-				File file = new File(context.getCacheDir(), fileName);
-
-				if(hoursOld != 0) {
-					Date fileDate = new Date(file.lastModified());
-					// Convert into hours
-					long age = (new Date().getTime() - fileDate.getTime()) / 1000 / 3600;
-					if(age > hoursOld) {
-						return null;
-					}
-				}
-
-				RandomAccessFile randomFile = new RandomAccessFile(file, "r");
+		T pending = getPendingWrite(fileName, tClass, false);
+		if(pending != null) {
+			return pending;
+		}
 
-				in = new Input(new FileInputStream(randomFile.getFD()));
-				T result = (T) kryo.readObject(in, tClass);
-				Log.i(TAG, "Deserialized object from " + fileName);
-				return result;
-			} catch(FileNotFoundException e) {
-				// Different error message
-				Log.w(TAG, "No serialization for object from " + fileName);
-				return null;
-			} catch (Throwable x) {
-				Log.w(TAG, "Failed to deserialize object from " + fileName, x);
-				return null;
-			} finally {
-				Util.close(in);
+		Input in = null;
+		try {
+			File file = new File(context.getCacheDir(), fileName);
+
+			if(hoursOld != 0) {
+				Date fileDate = new Date(file.lastModified());
+				// Convert into hours
+				long age = (new Date().getTime() - fileDate.getTime()) / 1000 / 3600;
+				if(age > hoursOld) {
+					return null;
+				}
 			}
+
+			in = openInput(file);
+			T result = (T) kryo.get().readObject(in, tClass);
+			Log.i(TAG, "Deserialized object from " + fileName);
+			return result;
+		} catch(FileNotFoundException e) {
+			// Different error message
+			Log.w(TAG, "No serialization for object from " + fileName);
+			return null;
+		} catch (Throwable x) {
+			Log.w(TAG, "Failed to deserialize object from " + fileName, x);
+			return null;
+		} finally {
+			Util.close(in);
 		}
     }
 
 	public static <T extends Serializable> boolean serializeCompressed(Context context, T obj, String fileName) {
-		synchronized (kryo) {
-			Output out = null;
-			try {
-				RandomAccessFile file = new RandomAccessFile(context.getCacheDir() + "/" + fileName, "rw");
-				out = new Output(new DeflaterOutputStream(new FileOutputStream(file.getFD())));
-				kryo.writeObject(out, obj);
-				Log.i(TAG, "Serialized compressed object to " + fileName);
-				return true;
-			} catch (Throwable x) {
-				Log.w(TAG, "Failed to serialize compressed object to " + fileName);
-				return false;
-			} finally {
-				Util.close(out);
-			}
-		}
+		return queueWrite(context, obj, fileName, true);
 	}
 
 	@TargetApi(Build.VERSION_CODES.GINGERBREAD)
 	public static <T extends Serializable> T deserializeCompressed(Context context, String fileName, Class<T> tClass) {
-		synchronized (kryo) {
-			Input in = null;
+		T pending = getPendingWrite(fileName, tClass, true);
+		if(pending != null) {
+			return pending;
+		}
+
+		Input in = null;
+		try {
+			// Closing the input closes the file along with it
+			in = new Input(new InflaterInputStream(new FileInputStream(new File(context.getCacheDir(), fileName))));
+			T result = (T) kryo.get().readObject(in, tClass);
+			Log.i(TAG, "Deserialized compressed object from " + fileName);
+			return result;
+		} catch(FileNotFoundException e) {
+			// Different error message
+			Log.w(TAG, "No serialization compressed for object from " + fileName);
+			return null;
+		} catch (Throwable x) {
+			Log.w(TAG, "Failed to deserialize compressed object from " + fileName, x);
+			return null;
+		} finally {
+			Util.close(in);
+		}
+	}
+
+	private static Input openInput(File file) throws IOException {
+		RandomAccessFile randomFile = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = randomFile.getChannel();
+			long length = channel.size();
+			if(length >= MAPPED_READ_SIZE) {
+				// Read large caches straight out of the page cache, the mapping stays valid after the file is closed
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+				return new Input(new ByteBufferInputStream(buffer), 8192);
+			} else {
+				byte[] bytes = new byte[(int) length];
+				randomFile.readFully(bytes);
+				return new Input(bytes);
+			}
+		} finally {
+			randomFile.close();
+		}
+	}
+
+	private static <T extends Serializable> T getPendingWrite(String fileName, Class<T> tClass, boolean compressed) {
+		PendingWrite write = pendingWrites.get(fileName);
+		if(write == null || write.compressed != compressed || !tClass.isAssignableFrom(write.type)) {
+			return null;
+		}
+
+		// Every reader gets its own copy, same as reading it from the file
+		Input in = null;
+		try {
+			in = compressed ? new Input(new InflaterInputStream(new ByteArrayInputStream(write.bytes))) : new Input(write.bytes);
+			return kryo.get().readObject(in, tClass);
+		} catch(Throwable x) {
+			Log.w(TAG, "Failed to deserialize pending object for " + fileName, x);
+			return null;
+		} finally {
+			Util.close(in);
+		}
+	}
+
+	/**
+	 * Copies the object by writing it out and reading it back the same way it is cached, or returns it as is if that fails
+	 */
+	public static <T extends Serializable> T copy(T obj, Class<T> tClass) {
+		byte[] bytes = toBytes(obj, tClass.getSimpleName(), false);
+		if(bytes != null) {
 			try {
-				RandomAccessFile file = new RandomAccessFile(context.getCacheDir() + "/" + fileName, "r");
-
-				in = new Input(new InflaterInputStream(new FileInputStream(file.getFD())));
-				T result = (T) kryo.readObject(in, tClass);
-				Log.i(TAG, "Deserialized compressed object from " + fileName);
-				return result;
-			} catch(FileNotFoundException e) {
-				// Different error message
-				Log.w(TAG, "No serialization compressed for object from " + fileName);
-				return null;
-			} catch (Throwable x) {
-				Log.w(TAG, "Failed to deserialize compressed object from " + fileName, x);
-				return null;
-			} finally {
-				Util.close(in);
+				return kryo.get().readObject(new Input(bytes), tClass);
+			} catch(Throwable x) {
+				Log.w(TAG, "Failed to copy " + tClass.getSimpleName(), x);
+			}
+		}
+		return obj;
+	}
+
+	private static byte[] toBytes(Object obj, String fileName, boolean compressed) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		Output out = new Output(compressed ? new DeflaterOutputStream(bytes) : bytes);
+		try {
+			kryo.get().writeObject(out, obj);
+			out.close();
+			return bytes.toByteArray();
+		} catch(Throwable x) {
+			Log.w(TAG, "Failed to serialize " + (compressed ? "compressed " : "") + "object to " + fileName, x);
+			return null;
+		}
+	}
+
+	private static boolean queueWrite(Context context, Object obj, final String fileName, boolean compressed) {
+		final Context appContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+
+		// Serialize now while the caller still holds whatever lock guards the object, only the disk write is put off
+		byte[] bytes = toBytes(obj, fileName, compressed);
+		if(bytes == null) {
+			return false;
+		}
+
+		// Only schedule a write if there wasn't one waiting already, the waiting one will pick up the newest bytes
+		if(pendingWrites.put(fileName, new PendingWrite(obj.getClass(), bytes, compressed)) == null) {
+			writeExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					while(true) {
+						PendingWrite write = pendingWrites.get(fileName);
+						if(write == null) {
+							// Deleted or written directly in the meantime
+							return;
+						}
+
+						synchronized (writeLock) {
+							if(pendingWrites.get(fileName) == write) {
+								writeNow(appContext, write.bytes, fileName, write.compressed);
+							}
+						}
+						if(pendingWrites.remove(fileName, write)) {
+							return;
+						}
+					}
+				}
+			});
+		}
+		return true;
+	}
+
+	private static boolean writeNow(Context context, byte[] bytes, String fileName, boolean compressed) {
+		// Write to a temp file first so readers never see a half written file
+		File file = new File(context.getCacheDir(), fileName);
+		File tmp = new File(context.getCacheDir(), fileName + ".tmp");
+		FileOutputStream out = null;
+		try {
+			out = new FileOutputStream(tmp);
+			out.write(bytes);
+			out.close();
+			out = null;
+
+			if(!tmp.renameTo(file)) {
+				throw new IOException("Failed to rename " + tmp + " to " + file);
 			}
+			Log.i(TAG, "Serialized " + (compressed ? "compressed " : "") + "object to " + fileName);
+			return true;
+		} catch (Throwable x) {
+			Log.w(TAG, "Failed to serialize " + (compressed ? "compressed " : "") + "object to " + fileName, x);
+			tmp.delete();
+			return false;
+		} finally {
+			Util.close(out);
+		}
+	}
+
+	private static class PendingWrite {
+		final Class<?> type;
+		final byte[] bytes;
+		final boolean compressed;
+
+		PendingWrite(Class<?> type, byte[] bytes, boolean compressed) {
+			this.type = type;
+			this.bytes = bytes;
+			this.compressed = compressed;
 		}
 	}
 }
@@ -27,6 +27,8 @@ import android.graphics.drawable.TransitionDrawable;
 import android.media.RemoteControlClient;
 import android.os.Build;
 import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
 import android.util.DisplayMetrics;
 import android.util.Log;
 import android.support.v4.util.LruCache;
@@ -38,8 +40,14 @@ import github.daneren2005.dsub.domain.MusicDirectory;
 import github.daneren2005.dsub.service.MusicService;
 import github.daneren2005.dsub.service.MusicServiceFactory;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Asynchronous loading of images, with caching.
@@ -50,6 +58,10 @@ import java.util.concurrent.LinkedBlockingQueue;
  */
 public class ImageLoader {
 	private static final String TAG = ImageLoader.class.getSimpleName();
+	private static final int THREAD_COUNT = 3;
+	private static final int MAX_QUEUED = 30;
+	private static final int PRIORITY_NORMAL = 0;
+	private static final int PRIORITY_HIGH = 1;
 
 	private Context context;
 	private LruCache<String, Bitmap> cache;
@@ -58,8 +70,29 @@ public class ImageLoader {
 	private final int imageSizeLarge;
 	private Drawable largeUnknownImage;
 
+	// Kept apart from the BackgroundTask threads so scrolling through a list can't starve everything else
+	private final PriorityBlockingQueue<Runnable> queue = new PriorityBlockingQueue<Runnable>();
+	private final ThreadPoolExecutor executor;
+	private final AtomicLong sequence = new AtomicLong();
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	// Only touched from the main thread
+	private final Map<View, ViewImageTask> pendingViews = new WeakHashMap<View, ViewImageTask>();
+
 	public ImageLoader(Context context) {
 		this.context = context;
+		executor = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT, 30L, TimeUnit.SECONDS, queue, new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable runnable) {
+				return new Thread(new Runnable() {
+					@Override
+					public void run() {
+						Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+						runnable.run();
+					}
+				}, TAG);
+			}
+		});
+		executor.allowCoreThreadTimeOut(true);
 		final int maxMemory = (int) (Runtime.getRuntime().maxMemory() / 1024);
 		final int cacheSize = maxMemory / 4;
 		cache = new LruCache<String, Bitmap>(cacheSize) {
@@ -72,6 +105,7 @@ public class ImageLoader {
 			protected void entryRemoved(boolean evicted, String key, Bitmap oldBitmap, Bitmap newBitmap) {
 				if(evicted) {
 					if(oldBitmap != nowPlaying) {
+						// Not pooled, a view can still be showing it and the next decode would draw over it
 						if(sizeOf("", oldBitmap) > 500) {
 							oldBitmap.recycle();
 						}
@@ -93,6 +127,14 @@ public class ImageLoader {
 	public void clearCache() {
 		nowPlaying = null;
 		cache.evictAll();
+		BitmapPool.getInstance().clear();
+	}
+
+	/**
+	 * Only the pool of bitmaps to decode into is let go, whatever is in the cache may still be on screen
+	 */
+	public void onLowMemory() {
+		BitmapPool.getInstance().clear();
 	}
 
 	private void createLargeUnknownImage(Context context) {
@@ -119,19 +161,34 @@ public class ImageLoader {
 	}
 
 	public void loadImage(View view, MusicDirectory.Entry entry, boolean large, boolean crossfade) {
+		// Whatever was last asked for this view is no longer wanted
+		ViewImageTask previous = pendingViews.remove(view);
+		if(previous != null) {
+			previous.cancel();
+		}
+
 		if (largeUnknownImage != null && ((BitmapDrawable)largeUnknownImage).getBitmap().isRecycled()) {
 			createLargeUnknownImage(view.getContext());
 		}
 
+		boolean lookupChild = false;
 		if(entry != null && entry.getCoverArt() == null && entry.isDirectory()) {
-			// Try to lookup child cover art
-			MusicDirectory.Entry firstChild = FileUtil.lookupChild(context, entry, true);
-			if(firstChild != null) {
-				entry.setCoverArt(firstChild.getCoverArt());
+			// Try to lookup child cover art, only from the index here since finding it otherwise means reading the whole directory
+			String coverArt = CoverArtIndex.getInstance(context).getCoverArt(context, entry);
+			if(coverArt != null) {
+				entry.setCoverArt(coverArt);
+			} else {
+				lookupChild = true;
 			}
 		}
 		if (entry == null || entry.getCoverArt() == null) {
 			setUnknownImage(view, large);
+			if(lookupChild) {
+				// Task does the lookup in the background
+				ViewImageTask task = new ViewImageTask(view.getContext(), entry, large ? imageSizeLarge : imageSizeDefault, imageSizeLarge, large, view, crossfade);
+				pendingViews.put(view, task);
+				execute(task);
+			}
 			return;
 		}
 
@@ -149,7 +206,9 @@ public class ImageLoader {
 		if (!large) {
 			setUnknownImage(view, large);
 		}
-		new ViewImageTask(view.getContext(), entry, size, imageSizeLarge, large, view, crossfade).execute();
+		ViewImageTask task = new ViewImageTask(view.getContext(), entry, size, imageSizeLarge, large, view, crossfade);
+		pendingViews.put(view, task);
+		execute(task);
 	}
 
 	public void loadImage(Context context, RemoteControlClient remoteControl, MusicDirectory.Entry entry) {
@@ -170,7 +229,45 @@ public class ImageLoader {
 		}
 
 		setUnknownImage(remoteControl);
-		new RemoteControlClientImageTask(context, entry, imageSizeLarge, imageSizeLarge, false, remoteControl).execute();
+		execute(new RemoteControlClientImageTask(context, entry, imageSizeLarge, imageSizeLarge, false, remoteControl));
+	}
+
+	/**
+	 * Gets the default size art for the entry into the cache ahead of time.  Blocks, so only call from a background thread.
+	 */
+	public void prefetchImage(Context context, MusicDirectory.Entry entry) throws Exception {
+		if(entry == null || entry.getCoverArt() == null) {
+			return;
+		}
+
+		String key = getKey(entry.getCoverArt(), imageSizeDefault);
+		Bitmap bitmap = cache.get(key);
+		if(bitmap == null || bitmap.isRecycled()) {
+			MusicService musicService = MusicServiceFactory.getMusicService(context);
+			bitmap = musicService.getCoverArt(context, entry, imageSizeDefault, null);
+			if(bitmap != null) {
+				cache.put(key, bitmap);
+			}
+		}
+	}
+
+	private void execute(ImageTask task) {
+		executor.execute(task);
+
+		// Drop the oldest normal loads rather than letting a long fling pile up work nobody is going to see
+		while(queue.size() > MAX_QUEUED) {
+			ImageTask oldest = null;
+			for(Runnable runnable: queue) {
+				ImageTask queued = (ImageTask) runnable;
+				if(oldest == null || queued.compareTo(oldest) > 0) {
+					oldest = queued;
+				}
+			}
+			if(oldest == null || oldest.mPriority != PRIORITY_NORMAL || !queue.remove(oldest)) {
+				break;
+			}
+			oldest.cancel();
+		}
 	}
 
 	private String getKey(String coverArtId, int size) {
@@ -251,60 +348,147 @@ public class ImageLoader {
 		setImage(remoteControl, largeUnknownImage);
 	}
 
-	private abstract class ImageTask extends SilentBackgroundTask<Void> {
+	/**
+	 * Runs high priority requests first, then the most recently asked for, since that is what is on screen right now
+	 */
+	private abstract class ImageTask implements Runnable, Comparable<ImageTask> {
 		private final Context mContext;
 		private final MusicDirectory.Entry mEntry;
 		private final int mSize;
 		private final int mSaveSize;
 		private final boolean mIsNowPlaying;
+		private final int mPriority;
+		private final long mSequence;
+		private volatile boolean mCancelled = false;
 		protected Drawable mDrawable;
+		// Found from the first child, only handed back to the entry on the main thread
+		private String mFoundCoverArt;
 
-		public ImageTask(Context context, MusicDirectory.Entry entry, int size, int saveSize, boolean isNowPlaying) {
-			super(context);
+		public ImageTask(Context context, MusicDirectory.Entry entry, int size, int saveSize, boolean isNowPlaying, int priority) {
 			mContext = context;
 			mEntry = entry;
 			mSize = size;
 			mSaveSize = saveSize;
 			mIsNowPlaying = isNowPlaying;
+			mPriority = priority;
+			mSequence = sequence.incrementAndGet();
 		}
 
-		@Override
-		protected Void doInBackground() throws Throwable {
-			try {
-				MusicService musicService = MusicServiceFactory.getMusicService(mContext);
-				Bitmap bitmap = musicService.getCoverArt(mContext, mEntry, mSize, null);
-				String key = getKey(mEntry.getCoverArt(), mSize);
-				cache.put(key, bitmap);
-				// Make sure key is the most recently "used"
-				cache.get(key);
-				if(mIsNowPlaying) {
-					nowPlaying = bitmap;
+		public void cancel() {
+			mCancelled = true;
+			// Might not be on the main thread when dropped from the queue
+			handler.post(new Runnable() {
+				@Override
+				public void run() {
+					release();
 				}
+			});
+		}
 
-				mDrawable = Util.createDrawableFromBitmap(mContext, bitmap);
+		@Override
+		public int compareTo(ImageTask other) {
+			if(mPriority != other.mPriority) {
+				return mPriority > other.mPriority ? -1 : 1;
+			}
+			return mSequence > other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+		}
+
+		@Override
+		public void run() {
+			boolean loaded = false;
+			try {
+				loaded = !mCancelled && load();
 			} catch (Throwable x) {
 				Log.e(TAG, "Failed to download album art.", x);
-				cancelled = true;
 			}
 
-			return null;
+			// Still cached even if cancelled while downloading, just not shown
+			final boolean show = loaded;
+			handler.post(new Runnable() {
+				@Override
+				public void run() {
+					if(mFoundCoverArt != null && mEntry.getCoverArt() == null) {
+						mEntry.setCoverArt(mFoundCoverArt);
+					}
+
+					if(show && !mCancelled) {
+						done();
+					} else {
+						release();
+					}
+				}
+			});
+		}
+
+		private boolean load() throws Exception {
+			MusicDirectory.Entry entry = mEntry;
+			if(entry.getCoverArt() == null) {
+				MusicDirectory.Entry firstChild = FileUtil.lookupChild(mContext, mEntry, true);
+				if(firstChild == null || firstChild.getCoverArt() == null) {
+					return false;
+				}
+				mFoundCoverArt = firstChild.getCoverArt();
+
+				// The entry is shown in a list, so work from a copy instead of changing it from here
+				entry = FileUtil.copy(mEntry, MusicDirectory.Entry.class);
+				if(entry == mEntry) {
+					// Still set on the entry afterwards, so the next time it is shown it gets loaded directly
+					return false;
+				}
+				entry.setCoverArt(mFoundCoverArt);
+			}
+
+			MusicService musicService = MusicServiceFactory.getMusicService(mContext);
+			Bitmap bitmap = musicService.getCoverArt(mContext, entry, mSize, null);
+			String key = getKey(entry.getCoverArt(), mSize);
+			cache.put(key, bitmap);
+			// Make sure key is the most recently "used"
+			cache.get(key);
+			if(mIsNowPlaying) {
+				nowPlaying = bitmap;
+			}
+
+			mDrawable = Util.createDrawableFromBitmap(mContext, bitmap);
+			return true;
+		}
+
+		protected abstract void done();
+
+		/**
+		 * Called on the main thread instead of done when nothing is going to be shown
+		 */
+		protected void release() {
+
 		}
 	}
 
 	private class ViewImageTask extends ImageTask {
 		protected boolean mCrossfade;
-		private View mView;
+		// Weak so the pending map doesn't keep the view and its activity alive through its own value
+		private final WeakReference<View> mView;
 
 		public ViewImageTask(Context context, MusicDirectory.Entry entry, int size, int saveSize, boolean isNowPlaying, View view, boolean crossfade) {
-			super(context, entry, size, saveSize, isNowPlaying);
+			super(context, entry, size, saveSize, isNowPlaying, isNowPlaying ? PRIORITY_HIGH : PRIORITY_NORMAL);
 
-			mView = view;
+			mView = new WeakReference<View>(view);
 			mCrossfade = crossfade;
 		}
 
 		@Override
-		protected void done(Void result) {
-			setImage(mView, mDrawable, mCrossfade);
+		protected void done() {
+			View view = mView.get();
+			if(view != null) {
+				release();
+				setImage(view, mDrawable, mCrossfade);
+			}
+		}
+
+		@Override
+		protected void release() {
+			View view = mView.get();
+			if(view != null && pendingViews.get(view) == this) {
+				pendingViews.remove(view);
+			}
 		}
 	}
 
@@ -312,13 +496,13 @@ public class ImageLoader {
 		private RemoteControlClient mRemoteControl;
 
 		public RemoteControlClientImageTask(Context context, MusicDirectory.Entry entry, int size, int saveSize, boolean isNowPlaying, RemoteControlClient remoteControl) {
-			super(context, entry, size, saveSize, isNowPlaying);
+			super(context, entry, size, saveSize, isNowPlaying, PRIORITY_HIGH);
 
 			mRemoteControl = remoteControl;
 		}
 
 		@Override
-		protected void done(Void result) {
+		protected void done() {
 			setImage(mRemoteControl, mDrawable);
 		}
 	}
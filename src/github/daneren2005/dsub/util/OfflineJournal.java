@@ -0,0 +1,411 @@
+/*
+	This file is part of Subsonic.
+
+	Subsonic is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	Subsonic is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with Subsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+	Copyright 2014 (C) Scott Jackson
+*/
+package github.daneren2005.dsub.util;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append only log of the scrobbles and stars made while offline.  Adding one is a single line written to the end of the file,
+ * replayed entries are marked done with another line so a sync that gets killed halfway picks up where it left off, and anything
+ * which fails stays around for the next sync.  Writes are flushed right away but only fsynced every so often, and the file is
+ * rewritten with just the pending entries once it is mostly done markers.  The pending counts are mirrored into the offline
+ * preferences so they can be shown without reading the journal.
+ */
+public class OfflineJournal {
+	private static final String TAG = OfflineJournal.class.getSimpleName();
+	private static final String FILENAME = "offline_journal";
+	private static final String CHARSET = "UTF-8";
+	private static final long SYNC_DELAY_MILLIS = 1000L;
+	private static final int MIN_COMPACT_SIZE = 64;
+
+	private static final String TYPE_SCROBBLE = "S";
+	private static final String TYPE_STAR = "T";
+	private static final String TYPE_DONE = "D";
+	// Written along with the entries moved over from the old preferences, so they can't be moved twice
+	private static final String TYPE_IMPORTED = "I";
+
+	private static OfflineJournal instance;
+
+	private final File file;
+	private final SharedPreferences offline;
+	private final Map<Long, Entry> pending = new LinkedHashMap<Long, Entry>();
+	private final ScheduledExecutorService syncExecutor = Executors.newSingleThreadScheduledExecutor();
+	private FileOutputStream out;
+	private Writer writer;
+	private long nextSeq = 1;
+	private int doneCount = 0;
+	private boolean syncScheduled = false;
+	private boolean imported = false;
+
+	private final Runnable syncTask = new Runnable() {
+		@Override
+		public void run() {
+			synchronized (OfflineJournal.this) {
+				syncScheduled = false;
+				sync();
+			}
+		}
+	};
+
+	public static synchronized OfflineJournal getInstance(Context context) {
+		if(instance == null) {
+			instance = new OfflineJournal(context.getApplicationContext());
+		}
+		return instance;
+	}
+
+	private OfflineJournal(Context context) {
+		file = new File(context.getFilesDir(), FILENAME);
+		offline = Util.getOfflineSync(context);
+		load();
+		importPreferences();
+		saveCounts();
+	}
+
+	public synchronized void addScrobble(String id, String search, long time) {
+		add(new Entry(nextSeq++, TYPE_SCROBBLE, id, search, time, false));
+		saveCounts();
+	}
+
+	public synchronized void addStar(String id, String search, boolean starred) {
+		add(new Entry(nextSeq++, TYPE_STAR, id, search, 0L, starred));
+		saveCounts();
+	}
+
+	/**
+	 * Pending scrobbles straight from the preferences, safe to call from the main thread
+	 */
+	public static int getScrobbleCount(Context context) {
+		SharedPreferences offline = Util.getOfflineSync(context);
+		return offline.getInt(Constants.OFFLINE_JOURNAL_SCROBBLE_COUNT, 0) + offline.getInt(Constants.OFFLINE_SCROBBLE_COUNT, 0);
+	}
+
+	/**
+	 * Pending stars straight from the preferences, safe to call from the main thread
+	 */
+	public static int getStarCount(Context context) {
+		SharedPreferences offline = Util.getOfflineSync(context);
+		return offline.getInt(Constants.OFFLINE_JOURNAL_STAR_COUNT, 0) + offline.getInt(Constants.OFFLINE_STAR_COUNT, 0);
+	}
+
+	public synchronized List<Entry> getScrobbles() {
+		return getPending(TYPE_SCROBBLE);
+	}
+
+	public synchronized List<Entry> getStars() {
+		return getPending(TYPE_STAR);
+	}
+
+	/**
+	 * Marks the given entries as replayed and forces them to disk, so they are not sent again after a crash
+	 */
+	public synchronized void complete(List<Entry> entries) {
+		for(Entry entry: entries) {
+			if(pending.remove(entry.seq) != null) {
+				append(TYPE_DONE + "\t" + entry.seq);
+				doneCount++;
+			}
+		}
+		sync();
+
+		if(pending.isEmpty() || (doneCount >= MIN_COMPACT_SIZE && doneCount > pending.size())) {
+			compact();
+		}
+		saveCounts();
+	}
+
+	public synchronized void clearScrobbles() {
+		complete(getScrobbles());
+	}
+
+	private void add(Entry entry) {
+		pending.put(entry.seq, entry);
+		append(entry.toRecord());
+	}
+
+	private void saveCounts() {
+		SharedPreferences.Editor editor = offline.edit();
+		editor.putInt(Constants.OFFLINE_JOURNAL_SCROBBLE_COUNT, getPending(TYPE_SCROBBLE).size());
+		editor.putInt(Constants.OFFLINE_JOURNAL_STAR_COUNT, getPending(TYPE_STAR).size());
+		editor.commit();
+	}
+
+	private List<Entry> getPending(String type) {
+		List<Entry> entries = new ArrayList<Entry>();
+		for(Entry entry: pending.values()) {
+			if(type.equals(entry.type)) {
+				entries.add(entry);
+			}
+		}
+		return entries;
+	}
+
+	private void load() {
+		if(!file.exists()) {
+			return;
+		}
+
+		boolean damaged = false;
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), CHARSET));
+			String line;
+			while((line = reader.readLine()) != null) {
+				String[] parts = line.split("\t", -1);
+				try {
+					if(TYPE_DONE.equals(parts[0]) && parts.length == 2) {
+						if(pending.remove(Long.parseLong(parts[1])) != null) {
+							doneCount++;
+						}
+					} else if(TYPE_IMPORTED.equals(parts[0]) && parts.length == 1) {
+						imported = true;
+					} else {
+						Entry entry = Entry.fromRecord(parts);
+						if(entry != null) {
+							pending.put(entry.seq, entry);
+							nextSeq = Math.max(nextSeq, entry.seq + 1);
+						} else {
+							damaged = true;
+						}
+					}
+				} catch(NumberFormatException e) {
+					damaged = true;
+				}
+			}
+		} catch(IOException e) {
+			Log.e(TAG, "Failed to read offline journal", e);
+		} finally {
+			Util.close(reader);
+		}
+
+		Log.i(TAG, "Loaded " + pending.size() + " pending offline changes");
+		if(damaged) {
+			// A record cut off by a crash would swallow the next one appended after it, so start over clean
+			Log.w(TAG, "Skipped partial journal records");
+			compact();
+		}
+	}
+
+	private void importPreferences() {
+		int scrobbles = offline.getInt(Constants.OFFLINE_SCROBBLE_COUNT, 0);
+		int stars = offline.getInt(Constants.OFFLINE_STAR_COUNT, 0);
+		if(scrobbles == 0 && stars == 0) {
+			return;
+		}
+
+		// Already moved over if the marker made it to disk, only the preferences weren't cleared before the app went away
+		if(!imported) {
+			synchronized (this) {
+				List<Entry> entries = new ArrayList<Entry>();
+				for(int i = 1; i <= scrobbles; i++) {
+					entries.add(new Entry(nextSeq++, TYPE_SCROBBLE, offline.getString(Constants.OFFLINE_SCROBBLE_ID + i, null), offline.getString(Constants.OFFLINE_SCROBBLE_SEARCH + i, ""), offline.getLong(Constants.OFFLINE_SCROBBLE_TIME + i, 0), false));
+				}
+				for(int i = 1; i <= stars; i++) {
+					entries.add(new Entry(nextSeq++, TYPE_STAR, offline.getString(Constants.OFFLINE_STAR_ID + i, null), offline.getString(Constants.OFFLINE_STAR_SEARCH + i, ""), 0L, offline.getBoolean(Constants.OFFLINE_STAR_SETTING + i, false)));
+				}
+
+				// Entries and marker go out in one write so they make it to disk together
+				StringBuilder records = new StringBuilder();
+				for(Entry entry: entries) {
+					pending.put(entry.seq, entry);
+					records.append(entry.toRecord()).append('\n');
+				}
+				records.append(TYPE_IMPORTED);
+				append(records.toString());
+				imported = true;
+				sync();
+			}
+		}
+
+		SharedPreferences.Editor editor = offline.edit();
+		editor.putInt(Constants.OFFLINE_SCROBBLE_COUNT, 0);
+		editor.putInt(Constants.OFFLINE_STAR_COUNT, 0);
+		editor.commit();
+		Log.i(TAG, "Moved " + scrobbles + " scrobbles and " + stars + " stars into the offline journal");
+	}
+
+	private void append(String record) {
+		try {
+			if(writer == null) {
+				out = new FileOutputStream(file, true);
+				writer = new OutputStreamWriter(out, CHARSET);
+			}
+			writer.write(record);
+			writer.write('\n');
+			writer.flush();
+
+			if(!syncScheduled) {
+				syncScheduled = true;
+				syncExecutor.schedule(syncTask, SYNC_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+			}
+		} catch(IOException e) {
+			Log.e(TAG, "Failed to append to offline journal", e);
+			closeWriter();
+		}
+	}
+
+	private void sync() {
+		if(out != null) {
+			try {
+				out.getFD().sync();
+			} catch(IOException e) {
+				Log.w(TAG, "Failed to sync offline journal", e);
+			}
+		}
+	}
+
+	private void compact() {
+		closeWriter();
+		if(pending.isEmpty() && !imported) {
+			file.delete();
+			doneCount = 0;
+			return;
+		}
+
+		File tmp = new File(file.getPath() + ".tmp");
+		FileOutputStream tmpOut = null;
+		try {
+			tmpOut = new FileOutputStream(tmp);
+			Writer tmpWriter = new OutputStreamWriter(tmpOut, CHARSET);
+			if(imported) {
+				tmpWriter.write(TYPE_IMPORTED);
+				tmpWriter.write('\n');
+			}
+			for(Entry entry: pending.values()) {
+				tmpWriter.write(entry.toRecord());
+				tmpWriter.write('\n');
+			}
+			tmpWriter.flush();
+			tmpOut.getFD().sync();
+			tmpOut.close();
+			tmpOut = null;
+
+			if(tmp.renameTo(file)) {
+				doneCount = 0;
+			} else {
+				tmp.delete();
+			}
+		} catch(IOException e) {
+			Log.e(TAG, "Failed to compact offline journal", e);
+			Util.close(tmpOut);
+			tmp.delete();
+		}
+	}
+
+	private void closeWriter() {
+		if(writer != null) {
+			sync();
+			Util.close(writer);
+			writer = null;
+			out = null;
+		}
+	}
+
+	private static String escape(String value) {
+		if(value == null) {
+			return "";
+		}
+		return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+	}
+
+	private static String unescape(String value) {
+		StringBuilder builder = new StringBuilder(value.length());
+		for(int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if(c == '\\' && i + 1 < value.length()) {
+				char next = value.charAt(++i);
+				if(next == 't') {
+					builder.append('\t');
+				} else if(next == 'n') {
+					builder.append('\n');
+				} else if(next == 'r') {
+					builder.append('\r');
+				} else {
+					builder.append(next);
+				}
+			} else {
+				builder.append(c);
+			}
+		}
+		return builder.toString();
+	}
+
+	public static class Entry {
+		private final long seq;
+		private final String type;
+		private final String id;
+		private final String search;
+		private final long time;
+		private final boolean starred;
+
+		private Entry(long seq, String type, String id, String search, long time, boolean starred) {
+			this.seq = seq;
+			this.type = type;
+			this.id = id;
+			this.search = search;
+			this.time = time;
+			this.starred = starred;
+		}
+
+		public String getId() {
+			return id;
+		}
+		public String getSearch() {
+			return search;
+		}
+		public long getTime() {
+			return time;
+		}
+		public boolean isStarred() {
+			return starred;
+		}
+
+		String toRecord() {
+			// type, seq, id, search, time, starred
+			return type + "\t" + seq + "\t" + (id == null ? "" : "+" + escape(id)) + "\t" + escape(search) + "\t" + time + "\t" + (starred ? "1" : "0");
+		}
+
+		static Entry fromRecord(String[] parts) {
+			if(parts.length != 6 || !(TYPE_SCROBBLE.equals(parts[0]) || TYPE_STAR.equals(parts[0])) || !("0".equals(parts[5]) || "1".equals(parts[5]))) {
+				return null;
+			}
+
+			String id = parts[2].length() == 0 ? null : unescape(parts[2].substring(1));
+			return new Entry(Long.parseLong(parts[1]), parts[0], id, unescape(parts[3]), Long.parseLong(parts[4]), "1".equals(parts[5]));
+		}
+	}
+}
@@ -18,7 +18,6 @@
  */
 package github.daneren2005.dsub.util;
 
-import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Executors;
@@ -86,7 +85,7 @@ public class ShufflePlayBuffer {
 
 			// Re-cache if anything is taken out
 			if(removed) {
-				FileUtil.serialize(context, buffer, CACHE_FILENAME);
+				FileUtil.serializeNow(context, buffer, CACHE_FILENAME);
 			}
 		}
 		Log.i(TAG, "Taking " + result.size() + " songs from shuffle play buffer. " + buffer.size() + " remaining.");
@@ -128,7 +127,7 @@ public class ShufflePlayBuffer {
 				lastCount = songs.getChildrenSize();
 
 				// Cache buffer
-				FileUtil.serialize(context, buffer, CACHE_FILENAME);
+				FileUtil.serializeNow(context, buffer, CACHE_FILENAME);
 			}
 		} catch (Exception x) {
 			// Give it one more try before quitting
@@ -174,8 +173,7 @@ public class ShufflePlayBuffer {
 					firstRun = false;
 				} else {
 					// Clear cache
-					File file = new File(context.getCacheDir(), CACHE_FILENAME);
-					file.delete();
+					FileUtil.deleteSerialized(context, CACHE_FILENAME);
 				}
 			}
 		}
@@ -0,0 +1,95 @@
+/*
+	This file is part of Subsonic.
+
+	Subsonic is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	Subsonic is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with Subsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+	Copyright 2014 (C) Scott Jackson
+*/
+package github.daneren2005.dsub.util;
+
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Lets concurrent callers asking for the same key share a single call.  The first caller runs it,
+ * everyone who shows up before it finishes waits for and gets the same result or exception.  Results
+ * handed to the waiters go through the copier, so nobody changes what another caller is holding.
+ * If the caller running it is interrupted, the waiters start over instead of failing with it.
+ */
+public class SingleFlight<T> {
+	private final Map<String, Call<T>> calls = new HashMap<String, Call<T>>();
+	private final Copier<T> copier;
+
+	public SingleFlight(Copier<T> copier) {
+		this.copier = copier;
+	}
+
+	public T execute(String key, Callable<T> callable) throws Exception {
+		while(true) {
+			Call<T> call;
+			boolean owner = false;
+			synchronized (calls) {
+				call = calls.get(key);
+				if(call == null) {
+					call = new Call<T>();
+					calls.put(key, call);
+					owner = true;
+				}
+			}
+
+			if(owner) {
+				try {
+					call.result = callable.call();
+				} catch(Throwable t) {
+					call.error = t;
+					call.abandoned = Thread.currentThread().isInterrupted() || t instanceof InterruptedException || t instanceof InterruptedIOException;
+				} finally {
+					synchronized (calls) {
+						calls.remove(key);
+					}
+					call.done.countDown();
+				}
+			} else {
+				call.done.await();
+				if(call.abandoned) {
+					// Only the caller that ran it was cancelled, try again for this one
+					continue;
+				}
+			}
+
+			if(call.error instanceof Exception) {
+				throw (Exception) call.error;
+			} else if(call.error instanceof Error) {
+				throw (Error) call.error;
+			} else if(call.error != null) {
+				throw new RuntimeException(call.error);
+			}
+			return (owner || call.result == null) ? call.result : copier.copy(call.result);
+		}
+	}
+
+	public interface Copier<T> {
+		T copy(T value);
+	}
+
+	private static class Call<T> {
+		final CountDownLatch done = new CountDownLatch(1);
+		T result;
+		Throwable error;
+		boolean abandoned;
+	}
+}
@@ -6,7 +6,6 @@ import android.content.Context;
 import android.content.Intent;
 import android.support.v4.app.NotificationCompat;
 
-import java.io.File;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
@@ -173,8 +172,7 @@ public final class SyncUtil {
 	public static void removeMostRecentSyncFiles(Context context) {
 		int total = Util.getServerCount(context);
 		for(int i = 0; i < total; i++) {
-			File file = new File(context.getCacheDir(), getMostRecentSyncFile(context, i));
-			file.delete();
+			FileUtil.deleteSerialized(context, getMostRecentSyncFile(context, i));
 		}
 	}
 	public static String getMostRecentSyncFile(Context context, int instance) {
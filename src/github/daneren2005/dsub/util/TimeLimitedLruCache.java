@@ -0,0 +1,98 @@
+/*
+	This file is part of Subsonic.
+
+	Subsonic is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	Subsonic is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with Subsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+	Copyright 2014 (C) Scott Jackson
+*/
+package github.daneren2005.dsub.util;
+
+import android.support.v4.util.LruCache;
+
+import java.lang.ref.SoftReference;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keyed version of TimeLimitedCache.  Entries are weighed by the given size, the least recently used ones
+ * are dropped once the total goes over the max, and values are only softly held so they still go under memory pressure.
+ */
+public class TimeLimitedLruCache<T> {
+	private final LruCache<String, CacheEntry<T>> cache;
+	private final long ttlMillis;
+	private int hitCount;
+	private int missCount;
+
+	public TimeLimitedLruCache(int maxSize, long ttl, TimeUnit timeUnit) {
+		this.ttlMillis = TimeUnit.MILLISECONDS.convert(ttl, timeUnit);
+		cache = new LruCache<String, CacheEntry<T>>(maxSize) {
+			@Override
+			protected int sizeOf(String key, CacheEntry<T> entry) {
+				return entry.size;
+			}
+		};
+	}
+
+	public synchronized T get(String key) {
+		CacheEntry<T> entry = cache.get(key);
+		T value = null;
+		if(entry != null) {
+			if(System.currentTimeMillis() < entry.expires) {
+				value = entry.value.get();
+			}
+
+			if(value == null) {
+				cache.remove(key);
+			}
+		}
+
+		if(value == null) {
+			missCount++;
+		} else {
+			hitCount++;
+		}
+		return value;
+	}
+
+	public synchronized void put(String key, T value, int size) {
+		cache.put(key, new CacheEntry<T>(value, Math.max(1, size), System.currentTimeMillis() + ttlMillis));
+	}
+
+	public synchronized void remove(String key) {
+		cache.remove(key);
+	}
+
+	public synchronized void clear() {
+		cache.evictAll();
+	}
+
+	public synchronized int getHitCount() {
+		return hitCount;
+	}
+
+	public synchronized int getMissCount() {
+		return missCount;
+	}
+
+	private static class CacheEntry<T> {
+		final SoftReference<T> value;
+		final int size;
+		final long expires;
+
+		CacheEntry(T value, int size, long expires) {
+			this.value = new SoftReference<T>(value);
+			this.size = size;
+			this.expires = expires;
+		}
+	}
+}
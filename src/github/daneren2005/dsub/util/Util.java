@@ -325,6 +325,16 @@ public final class Util {
         return preloadCount == -1 ? Integer.MAX_VALUE : preloadCount;
     }
 
+	public static int getDownloadConcurrency(Context context) {
+		SharedPreferences prefs = getPreferences(context);
+		return Integer.parseInt(prefs.getString(Constants.PREFERENCES_KEY_DOWNLOAD_CONCURRENCY, "2"));
+	}
+
+	public static int getPrefetchDirectoryCount(Context context) {
+		SharedPreferences prefs = getPreferences(context);
+		return Integer.parseInt(prefs.getString(Constants.PREFERENCES_KEY_PREFETCH_DIRECTORIES, "5"));
+	}
+
     public static int getCacheSizeMB(Context context) {
         SharedPreferences prefs = getPreferences(context);
         int cacheSize = Integer.parseInt(prefs.getString(Constants.PREFERENCES_KEY_CACHE_SIZE, "-1"));
@@ -418,12 +428,10 @@ public final class Util {
 	}
 	
 	public static int offlineScrobblesCount(Context context) {
-		SharedPreferences offline = getOfflineSync(context);
-		return offline.getInt(Constants.OFFLINE_SCROBBLE_COUNT, 0);
+		return OfflineJournal.getScrobbleCount(context);
 	}
 	public static int offlineStarsCount(Context context) {
-		SharedPreferences offline = getOfflineSync(context);
-		return offline.getInt(Constants.OFFLINE_STAR_COUNT, 0);
+		return OfflineJournal.getStarCount(context);
 	}
 	
 	public static String parseOfflineIDSearch(Context context, String id, String cacheLocation) {
@@ -897,6 +905,14 @@ public final class Util {
 		boolean connected = networkInfo != null && networkInfo.isConnected();
 		return connected && (networkInfo.getType() == ConnectivityManager.TYPE_WIFI);
 	}
+	public static boolean isNetworkMetered(Context context) {
+		ConnectivityManager manager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+		if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+			return manager.isActiveNetworkMetered();
+		} else {
+			return !isWifiConnected(context);
+		}
+	}
 	public static String getSSID(Context context) {
 		if (isWifiConnected(context)) {
 			WifiManager wifiManager = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
@@ -60,6 +60,7 @@ public class SongView extends UpdateView implements Checkable {
 	private boolean isSaved = false;
 	private File partialFile;
 	private boolean partialFileExists = false;
+	private int progress = 0;
 	private boolean loaded = false;
 
     public SongView(Context context) {
@@ -162,6 +163,7 @@ public class SongView extends UpdateView implements Checkable {
 		isSaved = downloadFile.isSaved();
 		partialFile = downloadFile.getPartialFile();
 		partialFileExists = partialFile.exists();
+		progress = downloadFile.getProgress();
 		isStarred = song.isStarred();
 		
 		// Check if needs to load metadata: check against all fields that we know are null in offline mode
@@ -207,7 +209,7 @@ public class SongView extends UpdateView implements Checkable {
 		}
 
         if (downloadFile.isDownloading() && !downloadFile.isDownloadCancelled() && partialFileExists) {
-			statusTextView.setText(Util.formatLocalizedBytes(partialFile.length(), getContext()));
+			statusTextView.setText(context.getResources().getString(R.string.download_progress, Util.formatLocalizedBytes(partialFile.length(), getContext()), progress));
 			if(!rightImage) {
 				statusImageView.setVisibility(View.VISIBLE);
 				rightImage = true;